@@ -0,0 +1,98 @@
+// Copyright 2026 The casbin Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.casbin.adapter;
+
+/**
+ * AdapterEvents records the operations and retries of the adapters as JDK Flight Recorder events.
+ * The JFR classes are only looked up by reflection when jdk.jfr is available, so the adapters keep working
+ * on JDKs without it, and an operation costs a volatile read when no recording is running.
+ */
+final class AdapterEvents {
+    private static final Recorder RECORDER = createRecorder();
+
+    private AdapterEvents() {
+    }
+
+    /**
+     * Trace collects the details of an operation until it ends.
+     */
+    interface Trace {
+        void setPtype(String ptype);
+
+        void addRows(long rows);
+
+        void addBatch();
+
+        void finish();
+    }
+
+    interface Recorder {
+        Trace begin(PolicyOperation operation, String tableName);
+
+        void retried(PolicyOperation operation, String tableName, int attempt, Throwable failure);
+
+        void failed(String task, String tableName, Throwable failure);
+    }
+
+    static final Trace NO_TRACE = new Trace() {
+        @Override
+        public void setPtype(String ptype) {
+        }
+
+        @Override
+        public void addRows(long rows) {
+        }
+
+        @Override
+        public void addBatch() {
+        }
+
+        @Override
+        public void finish() {
+        }
+    };
+
+    /**
+     * begin starts the trace of an operation, which is a no-op when the event is not recorded.
+     */
+    static Trace begin(PolicyOperation operation, String tableName) {
+        return RECORDER == null ? NO_TRACE : RECORDER.begin(operation, tableName);
+    }
+
+    /**
+     * retried records the retry of an operation after a failure.
+     */
+    static void retried(PolicyOperation operation, String tableName, int attempt, Throwable failure) {
+        if (RECORDER != null) {
+            RECORDER.retried(operation, tableName, attempt, failure);
+        }
+    }
+
+    /**
+     * failed records the failure of a background task of an adapter, like the expiry pruning.
+     */
+    static void failed(String task, String tableName, Throwable failure) {
+        if (RECORDER != null) {
+            RECORDER.failed(task, tableName, failure);
+        }
+    }
+
+    private static Recorder createRecorder() {
+        try {
+            return new JfrAdapterEvents();
+        } catch (ReflectiveOperationException | LinkageError | RuntimeException e) {
+            return null;
+        }
+    }
+}
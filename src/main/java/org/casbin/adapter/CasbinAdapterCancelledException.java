@@ -0,0 +1,36 @@
+// Copyright 2026 The casbin Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package org.casbin.adapter;
+
+import org.casbin.jcasbin.exception.CasbinAdapterException;
+
+/**
+ * CasbinAdapterCancelledException is thrown when an in-flight operation is stopped by cancel().
+ * It is never retried.
+ */
+public class CasbinAdapterCancelledException extends CasbinAdapterException {
+    private static final long serialVersionUID = 1L;
+
+    private final PolicyOperation operation;
+
+    public CasbinAdapterCancelledException(PolicyOperation operation, Throwable cause) {
+        super(String.format("%s was cancelled", operation), cause);
+        this.operation = operation;
+    }
+
+    public PolicyOperation getOperation() {
+        return operation;
+    }
+}
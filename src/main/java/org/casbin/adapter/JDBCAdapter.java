@@ -14,15 +14,15 @@
 
 package org.casbin.adapter;
 
-import dev.failsafe.Failsafe;
 import org.casbin.jcasbin.exception.CasbinAdapterException;
 import org.casbin.jcasbin.model.Model;
 import org.casbin.jcasbin.persist.FilteredAdapter;
-import org.casbin.jcasbin.persist.Helper;
 import org.casbin.jcasbin.persist.file_adapter.FilteredAdapter.Filter;
 
 import javax.sql.DataSource;
 import java.sql.*;
+import java.util.*;
+import java.util.function.Consumer;
 
 /**
  * JDBCFilteredAdapter is the JDBC adapter for jCasbin.
@@ -32,6 +32,10 @@ import java.sql.*;
  * @since 2021/01/26
  */
 public class JDBCAdapter extends JDBCBaseAdapter implements FilteredAdapter {
+    // The same bound as the default maxHierarchyLevel of the jCasbin role manager.
+    private static final int MAX_ROLE_DEPTH = 10;
+    // The names bound per query of the role walk, below the 2100 parameters of SQL Server.
+    private static final int ROLE_CHUNK_SIZE = 1000;
 
     private boolean isFiltered = false;
 
@@ -83,11 +87,51 @@ public class JDBCAdapter extends JDBCBaseAdapter implements FilteredAdapter {
         super(dataSource, removePolicyFailed, tableName, autoCreateTable);
     }
 
+    /**
+     * JDBCAdapter is the constructor for JDBCAdapter applying the schema options, like setUniquePolicies
+     * or setChangeTracking, before creating the table with migrate().
+     *
+     * <pre>
+     * JDBCAdapter adapter = new JDBCAdapter(driver, url, username, password, false, "casbin_rule", a -&gt; {
+     *     a.setUniquePolicies(true);
+     *     a.setChangeTracking(true);
+     * });
+     * </pre>
+     *
+     * @param driver             the JDBC driver, like "com.mysql.cj.jdbc.Driver".
+     * @param url                the JDBC URL, like "jdbc:mysql://localhost:3306/casbin".
+     * @param username           the username of the database.
+     * @param password           the password of the database.
+     * @param removePolicyFailed whether to throw an exception when delete strategy fails.
+     * @param tableName          the table name of casbin rule.
+     * @param schemaOptions      sets the schema options of the adapter.
+     */
+    public JDBCAdapter(String driver, String url, String username, String password, boolean removePolicyFailed, String tableName, Consumer<? super JDBCAdapter> schemaOptions) throws Exception {
+        super(driver, url, username, password, removePolicyFailed, tableName, false);
+        schemaOptions.accept(this);
+        migrate();
+    }
+
+    /**
+     * JDBCAdapter is the constructor for JDBCAdapter applying the schema options before creating the table with migrate().
+     *
+     * @param dataSource         the JDBC DataSource.
+     * @param removePolicyFailed whether to throw an exception when delete strategy fails.
+     * @param tableName          the table name of casbin rule.
+     * @param schemaOptions      sets the schema options of the adapter.
+     */
+    public JDBCAdapter(DataSource dataSource, boolean removePolicyFailed, String tableName, Consumer<? super JDBCAdapter> schemaOptions) throws Exception {
+        super(dataSource, removePolicyFailed, tableName, false);
+        schemaOptions.accept(this);
+        migrate();
+    }
+
     /**
      * loadFilteredPolicy loads only policy rules that match the filter.
      *
      * @param model  the model.
-     * @param filter the filter used to specify which type of policy should be loaded.
+     * @param filter the filter used to specify which type of policy should be loaded,
+     *               either a file adapter Filter or a JDBCFilter evaluated by the database.
      * @throws CasbinAdapterException if the file path or the type of the filter is incorrect.
      */
     @Override
@@ -97,13 +141,20 @@ public class JDBCAdapter extends JDBCBaseAdapter implements FilteredAdapter {
             isFiltered = false;
             return;
         }
+        if (filter instanceof JDBCFilter) {
+            loadJDBCFilteredPolicy(model, (JDBCFilter) filter);
+            isFiltered = true;
+            return;
+        }
         if (!(filter instanceof Filter)) {
             isFiltered = false;
             throw new CasbinAdapterException("Invalid filter type.");
         }
         try {
-            loadFilteredPolicyFile(model, (Filter) filter, Helper::loadPolicyLine);
+            loadFilteredPolicyFile(model, (Filter) filter);
             isFiltered = true;
+        } catch (CasbinAdapterException e) {
+            throw e;
         } catch (Exception e) {
             e.printStackTrace();
         }
@@ -120,79 +171,482 @@ public class JDBCAdapter extends JDBCBaseAdapter implements FilteredAdapter {
     }
 
     /**
-     * loadFilteredPolicyFile loads only policy rules that match the filter from file.
+     * loadFilteredPolicyFile loads only policy rules that match the filter, filtered by the database:
+     * the p and g rules must equal the non-empty values of filter.p and filter.g field by field,
+     * and the rules of the other ptypes are all loaded.
      */
-    private void loadFilteredPolicyFile(Model model, Filter filter, Helper.loadPolicyLineHandler<String, Model> handler) throws CasbinAdapterException {
-        Failsafe.with(retryPolicy).run(ctx -> {
-            if (ctx.isRetry()) {
-                retry(ctx);
+    private void loadFilteredPolicyFile(Model model, Filter filter) throws CasbinAdapterException {
+        List<String> params = new ArrayList<>();
+        List<String> conditions = new ArrayList<>();
+        addFilterCondition("p", filter.p, conditions, params);
+        addFilterCondition("g", filter.g, conditions, params);
+
+        execute(PolicyOperation.LOAD_FILTERED_POLICY, () -> {
+            List<String> where = new ArrayList<>(conditions);
+            String expiry = expiryCondition();
+            if (expiry != null) {
+                where.add(expiry);
             }
-            try (Statement stmt = conn.createStatement();
-                 ResultSet rSet = stmt.executeQuery(renderActualSql("SELECT * FROM casbin_rule"))) {
-                ResultSetMetaData rData = rSet.getMetaData();
-                while (rSet.next()) {
-                    CasbinRule line = new CasbinRule();
-                    for (int i = 1; i <= rData.getColumnCount(); i++) {
-                        if (i == 2) {
-                            line.ptype = rSet.getObject(i) == null ? "" : (String) rSet.getObject(i);
-                        } else if (i == 3) {
-                            line.v0 = rSet.getObject(i) == null ? "" : (String) rSet.getObject(i);
-                        } else if (i == 4) {
-                            line.v1 = rSet.getObject(i) == null ? "" : (String) rSet.getObject(i);
-                        } else if (i == 5) {
-                            line.v2 = rSet.getObject(i) == null ? "" : (String) rSet.getObject(i);
-                        } else if (i == 6) {
-                            line.v3 = rSet.getObject(i) == null ? "" : (String) rSet.getObject(i);
-                        } else if (i == 7) {
-                            line.v4 = rSet.getObject(i) == null ? "" : (String) rSet.getObject(i);
-                        } else if (i == 8) {
-                            line.v5 = rSet.getObject(i) == null ? "" : (String) rSet.getObject(i);
+            String sql = "SELECT ptype,v0,v1,v2,v3,v4,v5 FROM casbin_rule" + (where.isEmpty() ? "" : " WHERE " + String.join(" AND ", where));
+            long rows = 0;
+            for (String table : ruleTables()) {
+                try (PreparedStatement ps = prepareStatement(PolicyOperation.LOAD_FILTERED_POLICY, renderTableSql(sql, table))) {
+                    for (int i = 0; i < params.size(); i++) {
+                        ps.setString(i + 1, params.get(i));
+                    }
+                    try (ResultSet rSet = ps.executeQuery()) {
+                        while (rSet.next()) {
+                            loadPolicyLine(readLine(rSet, 1), model);
+                            rows++;
                         }
                     }
-                    if (filterLine(line, filter)) {
-                        continue;
+                }
+            }
+            recordRows(rows);
+        });
+    }
+
+    /**
+     * addFilterCondition adds the condition matching the rules of the ptype against the values of the filter,
+     * which lets the rules of the other ptypes through.
+     */
+    private void addFilterCondition(String ptype, String[] values, List<String> conditions, List<String> params) {
+        if (values == null) {
+            return;
+        }
+        List<String> fields = new ArrayList<>();
+        List<String> fieldParams = new ArrayList<>();
+        for (int i = 0; i < values.length && i < 6; i++) {
+            if (!values[i].isEmpty()) {
+                fields.add("v" + i + " = ?");
+                fieldParams.add(values[i].trim());
+            }
+        }
+        if (fields.isEmpty()) {
+            return;
+        }
+        conditions.add("(ptype <> ? OR (" + String.join(" AND ", fields) + "))");
+        params.add(ptype);
+        params.addAll(fieldParams);
+    }
+
+    /**
+     * loadJDBCFilteredPolicy loads only policy rules that match the JDBCFilter, filtered by the database.
+     */
+    private void loadJDBCFilteredPolicy(Model model, JDBCFilter filter) {
+        execute(PolicyOperation.LOAD_FILTERED_POLICY, () -> {
+            List<String> params = new ArrayList<>();
+            String condition = filter.toSql(params, getDatabaseProductName());
+            String expiry = expiryCondition();
+            if (expiry != null) {
+                condition = condition == null ? expiry : "(" + condition + ") AND " + expiry;
+            }
+            String sql = "SELECT ptype,v0,v1,v2,v3,v4,v5 FROM casbin_rule" + (condition == null ? "" : " WHERE " + condition);
+            long rows = 0;
+            for (String table : filterTables(filter)) {
+                try (PreparedStatement ps = prepareStatement(PolicyOperation.LOAD_FILTERED_POLICY, renderTableSql(sql, table))) {
+                    for (int i = 0; i < params.size(); i++) {
+                        ps.setString(i + 1, params.get(i));
+                    }
+                    try (ResultSet rSet = ps.executeQuery()) {
+                        while (rSet.next()) {
+                            loadPolicyLine(readLine(rSet, 1), model);
+                            rows++;
+                        }
                     }
-                    loadPolicyLine(line, model);
                 }
             }
+            recordRows(rows);
         });
     }
 
     /**
-     * match the line.
+     * filterTables returns the rule tables storing the ptypes referenced by the filter,
+     * or all of them if a clause matches any ptype.
      */
-    private boolean filterLine(CasbinRule line, Filter filter) {
-        if (filter == null) {
-            return false;
+    private List<String> filterTables(JDBCFilter filter) {
+        List<String> tables = ruleTables();
+        if (filter == null || filter.getClauses().isEmpty() || !hasPtypeTables()) {
+            return tables;
         }
-        String[] filterSlice = null;
-        switch (line.ptype.trim()) {
-            case "p":
-                filterSlice = filter.p;
-                break;
-            case "g":
-                filterSlice = filter.g;
-                break;
+        Set<String> referenced = new HashSet<>();
+        for (JDBCFilter.Clause clause : filter.getClauses()) {
+            if (clause.getPtypes().isEmpty()) {
+                return tables;
+            }
+            for (String ptype : clause.getPtypes()) {
+                referenced.add(tableFor(ptype));
+            }
         }
-        if (filterSlice == null) {
-            filterSlice = new String[]{};
+        tables.retainAll(referenced);
+        return tables;
+    }
+
+    /**
+     * loadSubjectPolicy loads only the policy rules relevant to a subject: its g rules, the g rules
+     * of every role it reaches, and the p rules of the subject and of those roles.
+     * The role closure is computed by the database with a recursive query on MySQL and PostgreSQL,
+     * and level by level on the other databases, see walkRoles.
+     *
+     * @param model   the model.
+     * @param subject the subject, like "alice".
+     */
+    public void loadSubjectPolicy(Model model, String subject) {
+        loadSubjectPolicy(model, subject, null);
+    }
+
+    /**
+     * loadSubjectPolicy loads only the policy rules relevant to a subject in a domain,
+     * for the models with domains where g is (user, role, domain) and p is (sub, dom, obj, act).
+     *
+     * @param model   the model.
+     * @param subject the subject, like "alice".
+     * @param domain  the domain, like "domain1", or null to ignore domains.
+     */
+    public void loadSubjectPolicy(Model model, String subject, String domain) {
+        String productName;
+        try {
+            productName = getDatabaseProductName();
+        } catch (SQLException e) {
+            throw new CasbinAdapterException("Failed to build the subject policy query.", e);
+        }
+
+        execute(PolicyOperation.LOAD_FILTERED_POLICY, () -> {
+            if ("MySQL".equals(productName) || "PostgreSQL".equals(productName)) {
+                List<String> params = new ArrayList<>();
+                loadSubjectRules(model, subjectPolicySql(subject, domain, params), params);
+                return;
+            }
+            List<String> roles = new ArrayList<>(walkRoles(subject, domain));
+            for (int from = 0; from < roles.size(); from += ROLE_CHUNK_SIZE) {
+                List<String> chunk = roles.subList(from, Math.min(from + ROLE_CHUNK_SIZE, roles.size()));
+                List<String> params = new ArrayList<>();
+                loadSubjectRules(model, subjectRulesSql(domain, chunk, params), params);
+            }
+        });
+        isFiltered = true;
+    }
+
+    private void loadSubjectRules(Model model, String sql, List<String> params) throws SQLException {
+        try (PreparedStatement ps = prepareStatement(PolicyOperation.LOAD_FILTERED_POLICY, sql)) {
+            for (int i = 0; i < params.size(); i++) {
+                ps.setString(i + 1, params.get(i));
+            }
+            try (ResultSet rSet = ps.executeQuery()) {
+                long rows = 0;
+                while (rSet.next()) {
+                    loadPolicyLine(readLine(rSet, 1), model);
+                    rows++;
+                }
+                recordRows(rows);
+            }
         }
-        return filterWords(line.toStringArray(), filterSlice);
     }
 
     /**
-     * match the words in the specific line.
+     * subjectPolicySql builds the query of loadSubjectPolicy on MySQL and PostgreSQL, whose recursive
+     * queries stop on cycles and reach every role once thanks to UNION. The g rules are read from the
+     * table of g and the p rules from the table of p, which are the same table without ptype tables.
      */
-    private boolean filterWords(String[] line, String[] filter) {
-        boolean skipLine = false;
-        int i = 0;
-        for (String s : filter) {
-            i++;
-            if (s.length() > 0 && !s.trim().equals(line[i].trim())) {
-                skipLine = true;
-                break;
+    private String subjectPolicySql(String subject, String domain, List<String> params) throws SQLException {
+        String expiry = expiryCondition();
+        String gTable = tableFor("g");
+        String roles = "r.ptype = ?" + (domain == null ? "" : " AND r.v2 = ?") + (expiry == null ? "" : " AND " + expiryCondition("r.expires_at"));
+        String type = "MySQL".equals(getDatabaseProductName()) ? "CHAR(100)" : "VARCHAR(100)";
+        String sql = "WITH RECURSIVE closure(name) AS (SELECT CAST(? AS " + type + ") UNION SELECT r.v1 FROM " + gTable + " r JOIN closure c ON r.v0 = c.name WHERE " + roles + ") ";
+        List<String> gParams = domain == null ? Arrays.asList("g") : Arrays.asList("g", domain);
+        List<String> pParams = domain == null ? Arrays.asList("p") : Arrays.asList("p", domain);
+        params.add(subject);
+        params.addAll(gParams);
+        params.addAll(gParams);
+        params.addAll(pParams);
+        return sql + subjectRulesSql(domain, "(SELECT name FROM closure)");
+    }
+
+    /**
+     * subjectRulesSql builds the query of the g and p rules of the given subjects and roles, adding its parameters.
+     */
+    private String subjectRulesSql(String domain, List<String> names, List<String> params) throws SQLException {
+        String list = "(" + String.join(",", Collections.nCopies(names.size(), "?")) + ")";
+        params.add("g");
+        if (domain != null) {
+            params.add(domain);
+        }
+        params.addAll(names);
+        params.add("p");
+        if (domain != null) {
+            params.add(domain);
+        }
+        params.addAll(names);
+        return subjectRulesSql(domain, list);
+    }
+
+    private String subjectRulesSql(String domain, String names) throws SQLException {
+        String expiry = expiryCondition();
+        return "SELECT ptype,v0,v1,v2,v3,v4,v5 FROM " + tableFor("g") + " WHERE ptype = ?" + (domain == null ? "" : " AND v2 = ?") +
+                (expiry == null ? "" : " AND " + expiry) + " AND v0 IN " + names + " UNION ALL " +
+                "SELECT ptype,v0,v1,v2,v3,v4,v5 FROM " + tableFor("p") + " WHERE ptype = ?" + (domain == null ? "" : " AND v1 = ?") +
+                (expiry == null ? "" : " AND " + expiry) + " AND v0 IN " + names;
+    }
+
+    /**
+     * walkRoles returns the subject and the roles it reaches through unexpired g rules, up to MAX_ROLE_DEPTH
+     * levels, on the databases whose recursive queries can't drop the roles already reached: H2 and SQL Server
+     * only take UNION ALL, and CONNECT BY on Oracle returns one row per path. In a diamond-shaped role graph,
+     * the rows of a recursive query would grow with the number of paths, exponential in the depth, so the roles
+     * are walked level by level instead, each query reading the next level of the roles not reached yet.
+     */
+    private Set<String> walkRoles(String subject, String domain) throws SQLException {
+        String expiry = expiryCondition();
+        String sql = "SELECT DISTINCT v1 FROM " + tableFor("g") + " WHERE ptype = ?" + (domain == null ? "" : " AND v2 = ?") +
+                (expiry == null ? "" : " AND " + expiry) + " AND v0 IN ";
+        Set<String> reached = new LinkedHashSet<>();
+        reached.add(subject);
+        List<String> level = Collections.singletonList(subject);
+        for (int depth = 0; depth < MAX_ROLE_DEPTH && !level.isEmpty(); depth++) {
+            List<String> next = new ArrayList<>();
+            for (int from = 0; from < level.size(); from += ROLE_CHUNK_SIZE) {
+                List<String> chunk = level.subList(from, Math.min(from + ROLE_CHUNK_SIZE, level.size()));
+                try (PreparedStatement ps = prepareStatement(PolicyOperation.LOAD_FILTERED_POLICY,
+                        sql + "(" + String.join(",", Collections.nCopies(chunk.size(), "?")) + ")")) {
+                    int index = 1;
+                    ps.setString(index++, "g");
+                    if (domain != null) {
+                        ps.setString(index++, domain);
+                    }
+                    for (String name : chunk) {
+                        ps.setString(index++, name);
+                    }
+                    try (ResultSet rSet = ps.executeQuery()) {
+                        while (rSet.next()) {
+                            String role = rSet.getString(1);
+                            if (role != null && reached.add(role)) {
+                                next.add(role);
+                            }
+                        }
+                    }
+                }
+            }
+            level = next;
+        }
+        return reached;
+    }
+
+    /**
+     * hasPolicy determines whether the rule exists in the storage, without loading the policy.
+     *
+     * @param ptype the policy type, like "p" or "g".
+     * @param rule  the rule, like ["alice", "data1", "read"].
+     * @return whether the rule exists, expired rules excluded.
+     */
+    public boolean hasPolicy(String ptype, List<String> rule) {
+        boolean[] found = new boolean[1];
+
+        execute(PolicyOperation.QUERY_POLICY, () -> {
+            String expiry = expiryCondition();
+            String sql = renderTableSql("SELECT 1 FROM casbin_rule WHERE ptype = ?", tableFor(ptype)) + ruleCondition(rule) +
+                    (expiry == null ? "" : " AND " + expiry);
+            try (PreparedStatement ps = prepareStatement(PolicyOperation.QUERY_POLICY, sql)) {
+                ps.setMaxRows(1);
+                ps.setString(1, ptype);
+                for (int i = 0; i < rule.size(); i++) {
+                    ps.setString(i + 2, rule.get(i));
+                }
+                try (ResultSet rSet = ps.executeQuery()) {
+                    found[0] = rSet.next();
+                }
             }
+        });
+        return found[0];
+    }
+
+    /**
+     * countPolicies counts the rules matching the field filter in the storage, without loading the policy.
+     *
+     * @param ptype       the policy type, like "p" or "g".
+     * @param fieldIndex  the index of the first filtered field, 0 for v0.
+     * @param fieldValues the values of the fields from fieldIndex, "" matches any value.
+     * @return the number of matching rules, expired rules excluded.
+     */
+    public long countPolicies(String ptype, int fieldIndex, String... fieldValues) {
+        List<String> values = Arrays.asList(fieldValues);
+        long[] count = new long[1];
+
+        execute(PolicyOperation.QUERY_POLICY, () -> {
+            String expiry = expiryCondition();
+            String sql = renderTableSql("SELECT COUNT(*) FROM casbin_rule WHERE ptype = ?", tableFor(ptype)) + filterCondition(fieldIndex, values) +
+                    (expiry == null ? "" : " AND " + expiry);
+            try (PreparedStatement ps = prepareStatement(PolicyOperation.QUERY_POLICY, sql)) {
+                setFilterParameters(ps, ptype, values);
+                try (ResultSet rSet = ps.executeQuery()) {
+                    rSet.next();
+                    count[0] = rSet.getLong(1);
+                }
+            }
+        });
+        return count[0];
+    }
+
+    /**
+     * getFilteredPolicy iterates over the rules matching the field filter in the storage.
+     * The rules are read lazily in pages ordered by id, one query per page,
+     * so the matching rules don't need to fit in memory.
+     *
+     * @param ptype       the policy type, like "p" or "g".
+     * @param pageSize    the number of rules read per query.
+     * @param fieldIndex  the index of the first filtered field, 0 for v0.
+     * @param fieldValues the values of the fields from fieldIndex, "" matches any value.
+     * @return the iterator over the rules, without the ptype.
+     */
+    public Iterator<List<String>> getFilteredPolicy(String ptype, int pageSize, int fieldIndex, String... fieldValues) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("Invalid page size: " + pageSize);
+        }
+        return new PolicyPageIterator(ptype, pageSize, fieldIndex, Arrays.asList(fieldValues));
+    }
+
+    /**
+     * streamPolicies passes the rules matching the filter to the handler one at a time, without loading them
+     * into a model. The rules are read in pages ordered by id, one query per page, and the next page is only
+     * read once the handler processed the current one, so tables larger than the heap can be processed.
+     * A retry after a connection failure resumes after the last handled page.
+     *
+     * @param filter   the filter, or null for every rule.
+     * @param pageSize the number of rules read per query.
+     * @param handler  the handler of the rules, returning false to stop the stream.
+     * @return the number of rules passed to the handler.
+     */
+    public long streamPolicies(JDBCFilter filter, int pageSize, PolicyRuleHandler handler) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("Invalid page size: " + pageSize);
+        }
+        List<String> params = new ArrayList<>();
+        String sql;
+        try {
+            String condition = filter == null ? null : filter.toSql(params, getDatabaseProductName());
+            sql = pageSql(condition == null ? "" : " AND (" + condition + ")");
+        } catch (SQLException e) {
+            throw new CasbinAdapterException("Failed to build the page query.", e);
+        }
+
+        List<String> tables = filterTables(filter);
+        int[] table = {0};
+        long[] lastId = {Long.MIN_VALUE};
+        long[] count = new long[1];
+        execute(PolicyOperation.QUERY_POLICY, () -> {
+            for (; table[0] < tables.size(); table[0]++, lastId[0] = Long.MIN_VALUE) {
+                if (!streamTable(renderTableSql(sql, tables.get(table[0])), params, pageSize, handler, lastId, count)) {
+                    return;
+                }
+            }
+        });
+        return count[0];
+    }
+
+    /**
+     * streamTable passes the rules of a table after lastId to the handler, updating lastId after every page.
+     *
+     * @return false if the handler stopped the stream.
+     */
+    private boolean streamTable(String sql, List<String> params, int pageSize, PolicyRuleHandler handler, long[] lastId, long[] count) throws SQLException {
+        List<CasbinRule> page = new ArrayList<>(Math.min(pageSize, batchSize));
+        do {
+            page.clear();
+            long pageLastId = lastId[0];
+            try (PreparedStatement ps = prepareStatement(PolicyOperation.QUERY_POLICY, sql)) {
+                ps.setLong(1, pageLastId);
+                for (int i = 0; i < params.size(); i++) {
+                    ps.setString(i + 2, params.get(i));
+                }
+                ps.setInt(params.size() + 2, pageSize);
+                try (ResultSet rSet = ps.executeQuery()) {
+                    while (rSet.next()) {
+                        pageLastId = rSet.getLong(1);
+                        page.add(readLine(rSet, 2));
+                    }
+                }
+            }
+            lastId[0] = pageLastId;
+            recordRows(page.size());
+            for (CasbinRule line : page) {
+                count[0]++;
+                if (!handler.handle(line.ptype, toRule(line))) {
+                    return false;
+                }
+            }
+        } while (page.size() == pageSize);
+        return true;
+    }
+
+    /**
+     * PolicyPageIterator reads the next page of rules after the last returned id when the current one is exhausted.
+     */
+    private class PolicyPageIterator implements Iterator<List<String>> {
+        private final String ptype;
+        private final int pageSize;
+        private final List<String> values;
+        private final String sql;
+        private final Deque<List<String>> page = new ArrayDeque<>();
+        private long lastId = Long.MIN_VALUE;
+        private boolean exhausted = false;
+
+        private PolicyPageIterator(String ptype, int pageSize, int fieldIndex, List<String> values) {
+            this.ptype = ptype;
+            this.pageSize = pageSize;
+            this.values = values;
+            try {
+                this.sql = renderTableSql(pageSql(" AND ptype = ?" + filterCondition(fieldIndex, values)), tableFor(ptype));
+            } catch (SQLException e) {
+                throw new CasbinAdapterException("Failed to build the page query.", e);
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (page.isEmpty() && !exhausted) {
+                fetchPage();
+            }
+            return !page.isEmpty();
+        }
+
+        @Override
+        public List<String> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return page.poll();
+        }
+
+        private void fetchPage() {
+            execute(PolicyOperation.QUERY_POLICY, () -> {
+                page.clear();
+                try (PreparedStatement ps = prepareStatement(PolicyOperation.QUERY_POLICY, sql)) {
+                    ps.setLong(1, lastId);
+                    int index = 2;
+                    ps.setString(index++, ptype);
+                    for (String value : values) {
+                        if (Objects.equals(value, "")) continue;
+                        ps.setString(index++, value);
+                    }
+                    ps.setInt(index, pageSize);
+                    long pageLastId = lastId;
+                    try (ResultSet rSet = ps.executeQuery()) {
+                        while (rSet.next()) {
+                            pageLastId = rSet.getLong(1);
+                            List<String> rule = new ArrayList<>();
+                            for (int i = 3; i <= 8; i++) {
+                                String value = rSet.getString(i);
+                                if (value != null && !value.isEmpty()) {
+                                    rule.add(value);
+                                }
+                            }
+                            page.add(rule);
+                        }
+                    }
+                    exhausted = page.size() < pageSize;
+                    lastId = pageLastId;
+                }
+            });
         }
-        return skipLine;
     }
 }
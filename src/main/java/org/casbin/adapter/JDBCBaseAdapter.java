@@ -16,7 +16,9 @@ package org.casbin.adapter;
 
 import dev.failsafe.ExecutionContext;
 import dev.failsafe.Failsafe;
+import dev.failsafe.FailsafeExecutor;
 import dev.failsafe.RetryPolicy;
+import dev.failsafe.function.CheckedRunnable;
 import org.apache.commons.collections4.CollectionUtils;
 import org.casbin.jcasbin.exception.CasbinAdapterException;
 import org.casbin.jcasbin.model.Assertion;
@@ -27,9 +29,27 @@ import org.casbin.jcasbin.persist.Helper;
 import org.casbin.jcasbin.persist.UpdatableAdapter;
 
 import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.sql.*;
 import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 class CasbinRule {
     int id; //Fields reserved for compatibility with other adapters, and the primary key is automatically incremented.
@@ -55,12 +75,48 @@ abstract class JDBCBaseAdapter implements Adapter, BatchAdapter, UpdatableAdapte
     protected static final boolean DEFAULT_REMOVE_POLICY_FAILED = false;
     protected static final boolean DEFAULT_AUTO_CREATE_TABLE = true;
     protected static final int _DEFAULT_CONNECTION_TRIES = 3;
+    private static final int SCHEMA_VERSION = 1;
+    private static final int DEFAULT_RECONCILE_BUCKETS = 1024;
+    private static final String[] RULE_COLUMNS = {"ptype", "v0", "v1", "v2", "v3", "v4", "v5"};
     protected DataSource dataSource;
     protected String tableName;
     protected boolean removePolicyFailed;
-    private final int batchSize = 1000;
-    protected Connection conn;
+    protected final int batchSize = 1000;
+    protected volatile Connection conn;
     protected RetryPolicy<Object> retryPolicy;
+    protected int queryTimeout = 0;
+    protected final Map<PolicyOperation, Integer> queryTimeouts = new EnumMap<>(PolicyOperation.class);
+    protected volatile boolean retryOnTimeout = false;
+    protected boolean uniquePolicies = false;
+    protected int loadPageSize = 0;
+    protected boolean changeTracking = false;
+    protected boolean shadowSave = false;
+    protected boolean highThroughputSchema = false;
+    protected boolean schemaMarker = false;
+    protected boolean policyExpiry = false;
+    protected String[] ptypeTables = new String[0];
+    protected String[] partitionPtypes;
+    protected int partitionField = -1;
+    protected int partitionCount;
+    protected int shadowSaveParallelism = 1;
+    protected volatile boolean recordOwnVersions = false;
+    protected final NavigableSet<Long> ownVersions = new ConcurrentSkipListSet<>();
+    // The id sent by the notify trigger for the changes made through the PostgreSQL connections of the adapter.
+    protected final String instanceId = UUID.randomUUID().toString();
+    private static final Map<String, Object> SHADOW_SAVE_LOCKS = new ConcurrentHashMap<>();
+    private String productName;
+    private ScheduledExecutorService pruner;
+    private ExecutorService loadExecutor;
+    private final ThreadLocal<String> routedTable = new ThreadLocal<>();
+    // The loads in flight, each with its own cancel request and statements, so other calls never reset them.
+    private final Set<LoadCall> activeLoads = ConcurrentHashMap.newKeySet();
+    // The load the statements of the thread belong to.
+    private final ThreadLocal<LoadCall> currentLoad = new ThreadLocal<>();
+    private boolean transactionOpen;
+    private boolean transactionChanged;
+    // The trace of the outermost operation running on the thread.
+    private final ThreadLocal<AdapterEvents.Trace> trace = new ThreadLocal<>();
+    private final Map<Model, String> fingerprints = Collections.synchronizedMap(new WeakHashMap<>());
 
     /**
      * JDBCAdapter is the constructor for JDBCAdapter.
@@ -93,30 +149,81 @@ abstract class JDBCBaseAdapter implements Adapter, BatchAdapter, UpdatableAdapte
         this.removePolicyFailed = removePolicyFailed;
         retryPolicy = RetryPolicy.builder()
             .handle(SQLException.class)
+            .handleIf(e -> retryOnTimeout && e instanceof CasbinAdapterTimeoutException)
             .withDelay(Duration.ofSeconds(1))
             .withMaxRetries(_DEFAULT_CONNECTION_TRIES)
             .build();
-        conn = dataSource.getConnection();
+        // The connection is opened on first use, so the constructor does no I/O without autoCreateTable.
         if (autoCreateTable) {
             migrate();
         }
     }
 
-    protected void migrate() throws SQLException {
-        Statement stmt = conn.createStatement();
+    /**
+     * migrate creates the casbin_rule table if it doesn't exist.
+     * It is called by the constructor when autoCreateTable is true, before any setter could run,
+     * so the schema options (setUniquePolicies, setChangeTracking, setHighThroughputSchema, setPolicyExpiry,
+     * setPtypeTables, setSchemaMarker and the partitioning) are passed to the JDBCAdapter constructor taking
+     * schema options, or set on an adapter created with autoCreateTable = false before calling migrate().
+     * With setSchemaMarker, it reads the marker left by the last migration and skips the DDL
+     * if the schema was created with the same options.
+     */
+    public void migrate() throws SQLException {
+        if (schemaMarker && schemaSignature().equals(readSchemaMarker())) {
+            return;
+        }
+        createSchema();
+        if (schemaMarker) {
+            writeSchemaMarker();
+        }
+    }
+
+    /**
+     * createSchema creates the tables of the adapter, doing nothing for the existing ones.
+     */
+    protected void createSchema() throws SQLException {
+        String productName = getDatabaseProductName();
+        if (hasPtypeTables() && isPartitioned()) {
+            throw new IllegalStateException("Ptype tables and partitioning can't be combined.");
+        }
+        if (hasPtypeTables() && "Oracle".equals(productName) && !highThroughputSchema) {
+            // The id trigger is named after the sequence, not the table, so only one table can have it.
+            throw new IllegalStateException("Ptype tables require setHighThroughputSchema on Oracle.");
+        }
+        Statement stmt = getConnection().createStatement();
+        String previous = routedTable.get();
+        try {
+            for (String table : ruleTables()) {
+                routedTable.set(table);
+                createRuleTable(stmt, productName);
+            }
+        } finally {
+            routedTable.set(previous);
+        }
+        if (changeTracking) {
+            createVersionTable(stmt, productName);
+            if (supportsChangeNotification()) {
+                createNotifyTrigger(stmt);
+            }
+        }
+    }
+
+    /**
+     * createRuleTable creates the casbin_rule table with its options, doing nothing if it exists.
+     */
+    private void createRuleTable(Statement stmt, String productName) throws SQLException {
         String sql = renderActualSql("CREATE TABLE IF NOT EXISTS casbin_rule(id int NOT NULL PRIMARY KEY auto_increment, ptype VARCHAR(100) NOT NULL, v0 VARCHAR(100), v1 VARCHAR(100), v2 VARCHAR(100), v3 VARCHAR(100), v4 VARCHAR(100), v5 VARCHAR(100))");
-        String productName = conn.getMetaData().getDatabaseProductName();
 
         switch (productName) {
             case "MySQL":
                 String hasTableSql = renderActualSql("SHOW TABLES LIKE 'casbin_rule';");
                 ResultSet rs = stmt.executeQuery(hasTableSql);
                 if (rs.next()) {
-                    return;
+                    sql = null;
                 }
                 break;
             case "Oracle":
-                sql = renderActualSql("declare begin execute immediate 'CREATE TABLE CASBIN_RULE(id NUMBER(5, 0) not NULL primary key, ptype VARCHAR(100) not NULL, v0 VARCHAR(100), v1 VARCHAR(100), v2 VARCHAR(100), v3 VARCHAR(100), v4 VARCHAR(100), v5 VARCHAR(100))'; " +
+                sql = renderActualSql("declare begin execute immediate 'CREATE TABLE CASBIN_RULE(id NUMBER(" + (highThroughputSchema ? "19" : "5") + ", 0) not NULL primary key, ptype VARCHAR(100) not NULL, v0 VARCHAR(100), v1 VARCHAR(100), v2 VARCHAR(100), v3 VARCHAR(100), v4 VARCHAR(100), v5 VARCHAR(100))'; " +
                         "exception when others then " +
                         "if SQLCODE = -955 then " +
                         "null; " +
@@ -125,7 +232,7 @@ abstract class JDBCBaseAdapter implements Adapter, BatchAdapter, UpdatableAdapte
                         "end;");
                 break;
             case "Microsoft SQL Server":
-                sql = renderActualSql("IF NOT EXISTS (SELECT * FROM sysobjects WHERE name='casbin_rule' and xtype='U') CREATE TABLE casbin_rule(id int NOT NULL primary key identity(1, 1), ptype VARCHAR(100) NOT NULL, v0 VARCHAR(100), v1 VARCHAR(100), v2 VARCHAR(100), v3 VARCHAR(100), v4 VARCHAR(100), v5 VARCHAR(100))");
+                sql = renderActualSql("IF NOT EXISTS (SELECT * FROM sysobjects WHERE name='casbin_rule' and xtype='U') CREATE TABLE casbin_rule(id " + (highThroughputSchema ? "bigint" : "int") + " NOT NULL primary key identity(1, 1), ptype VARCHAR(100) NOT NULL, v0 VARCHAR(100), v1 VARCHAR(100), v2 VARCHAR(100), v3 VARCHAR(100), v4 VARCHAR(100), v5 VARCHAR(100))");
                 break;
             case "PostgreSQL":
                 sql = renderActualSql("do $$ " +
@@ -142,7 +249,9 @@ abstract class JDBCBaseAdapter implements Adapter, BatchAdapter, UpdatableAdapte
                 break;
         }
 
-        stmt.executeUpdate(sql);
+        if (sql != null) {
+            stmt.executeUpdate(sql);
+        }
         if ("Oracle".equals(productName)) {
             sql = renderActualSql("declare " +
                     "V_NUM number;" +
@@ -152,33 +261,401 @@ abstract class JDBCBaseAdapter implements Adapter, BatchAdapter, UpdatableAdapte
                     "if V_NUM > 0 then " +
                     "null;" +
                     "else " +
-                    "execute immediate 'CREATE SEQUENCE casbin_sequence increment by 1 start with 1 nomaxvalue nocycle nocache';" +
+                    "execute immediate 'CREATE SEQUENCE casbin_sequence increment by 1 start with 1 nomaxvalue nocycle " + (highThroughputSchema ? "cache 1000" : "nocache") + "';" +
                     "end if;END;");
             stmt.executeUpdate(sql);
-            sql = renderActualSql("declare " +
+            if (highThroughputSchema) {
+                upgradeHighThroughputSchema(stmt, productName);
+            } else {
+                sql = renderActualSql("declare " +
+                        "V_NUM number;" +
+                        "BEGIN " +
+                        "V_NUM := 0;" +
+                        "select count(0) into V_NUM from user_triggers where trigger_name = 'CASBIN_ID_AUTOINCREMENT';" +
+                        "if V_NUM > 0 then " +
+                        "null;" +
+                        "else " +
+                        "execute immediate 'create trigger casbin_id_autoincrement before " +
+                        "                        insert on CASBIN_RULE for each row " +
+                        "                        when (new.id is null) " +
+                        "                        begin " +
+                        "                        select casbin_sequence.nextval into:new.id from dual;" +
+                        "                        end;';" +
+                        "end if;" +
+                        "END;");
+                stmt.executeUpdate(sql);
+            }
+        } else if ("PostgreSQL".equals(productName)) {
+            if (isPartitioned()) {
+                createPartitionedTable(stmt);
+            } else {
+                sql = renderActualSql("CREATE TABLE IF NOT EXISTS casbin_rule(id int NOT NULL PRIMARY KEY default nextval('CASBIN_SEQUENCE'::regclass), ptype VARCHAR(100) NOT NULL, v0 VARCHAR(100), v1 VARCHAR(100), v2 VARCHAR(100), v3 VARCHAR(100), v4 VARCHAR(100), v5 VARCHAR(100))");
+                stmt.executeUpdate(sql);
+            }
+        }
+        if (highThroughputSchema && "Microsoft SQL Server".equals(productName)) {
+            upgradeHighThroughputSchema(stmt, productName);
+        }
+        if (uniquePolicies) {
+            createUniqueIndex(stmt, productName);
+        }
+        if (policyExpiry) {
+            createExpiryColumn(stmt, productName);
+        }
+    }
+
+    /**
+     * schemaSignature describes the schema created by createSchema with the current options.
+     * SCHEMA_VERSION must be increased whenever createSchema changes, so the marker of an older schema doesn't match.
+     */
+    protected String schemaSignature() {
+        return "v" + SCHEMA_VERSION + ";unique=" + uniquePolicies + ";tracking=" + changeTracking
+                + ";highThroughput=" + highThroughputSchema + ";expiry=" + policyExpiry
+                + ";tables=" + Arrays.toString(ptypeTables)
+                + ";partition=" + (partitionPtypes != null ? "list" + Arrays.toString(partitionPtypes)
+                : partitionField >= 0 ? "hash(v" + partitionField + "," + partitionCount + ")" : "none");
+    }
+
+    /**
+     * readSchemaMarker returns the signature stored by the last migration, or null if there is none.
+     */
+    private String readSchemaMarker() {
+        try (Statement stmt = getConnection().createStatement();
+             ResultSet rSet = stmt.executeQuery(renderActualSql("SELECT signature FROM casbin_rule_schema WHERE id = 1"))) {
+            return rSet.next() ? rSet.getString(1) : null;
+        } catch (SQLException e) {
+            // The marker table doesn't exist before the first migration.
+            return null;
+        }
+    }
+
+    private void writeSchemaMarker() throws SQLException {
+        String productName = getDatabaseProductName();
+        try (Statement stmt = getConnection().createStatement()) {
+            switch (productName) {
+                case "Oracle":
+                    stmt.executeUpdate(renderActualSql("declare begin execute immediate 'CREATE TABLE casbin_rule_schema(id NUMBER(10, 0) not NULL primary key, signature VARCHAR(500) not NULL)'; " +
+                            "exception when others then " +
+                            "if SQLCODE = -955 then " +
+                            "null; " +
+                            "else raise; " +
+                            "end if; " +
+                            "end;"));
+                    break;
+                case "Microsoft SQL Server":
+                    stmt.executeUpdate(renderActualSql("IF NOT EXISTS (SELECT * FROM sysobjects WHERE name='casbin_rule_schema' and xtype='U') CREATE TABLE casbin_rule_schema(id int NOT NULL primary key, signature VARCHAR(500) NOT NULL)"));
+                    break;
+                default:
+                    stmt.executeUpdate(renderActualSql("CREATE TABLE IF NOT EXISTS casbin_rule_schema(id int NOT NULL PRIMARY KEY, signature VARCHAR(500) NOT NULL)"));
+                    break;
+            }
+        }
+        String signature = schemaSignature();
+        try (PreparedStatement ps = getConnection().prepareStatement(renderActualSql("UPDATE casbin_rule_schema SET signature = ? WHERE id = 1"))) {
+            ps.setString(1, signature);
+            if (ps.executeUpdate() > 0) {
+                return;
+            }
+        }
+        try (PreparedStatement ps = getConnection().prepareStatement(renderActualSql("INSERT INTO casbin_rule_schema (id, signature) VALUES (1, ?)"))) {
+            ps.setString(1, signature);
+            ps.executeUpdate();
+        }
+    }
+
+    /**
+     * createPartitionedTable creates the casbin_rule table of PostgreSQL partitioned by ptype or by the hash of a field,
+     * with its partitions and an index on (ptype, v0) created on every partition. Keys of partitioned tables must include
+     * the partition key, so the id is unique with it: (id, ptype) is the primary key of a LIST partitioned table, and
+     * (id, vN) is unique in a HASH partitioned table, since a missing field is stored as NULL.
+     */
+    private void createPartitionedTable(Statement stmt) throws SQLException {
+        String columns = "id int NOT NULL default nextval('CASBIN_SEQUENCE'::regclass), ptype VARCHAR(100) NOT NULL, v0 VARCHAR(100), v1 VARCHAR(100), v2 VARCHAR(100), v3 VARCHAR(100), v4 VARCHAR(100), v5 VARCHAR(100)";
+        List<String> sqls = new ArrayList<>();
+        if (partitionPtypes != null) {
+            sqls.add("CREATE TABLE IF NOT EXISTS casbin_rule(" + columns + ", PRIMARY KEY (id, ptype)) PARTITION BY LIST (ptype)");
+            for (String ptype : partitionPtypes) {
+                sqls.add("CREATE TABLE IF NOT EXISTS casbin_rule_" + ptype + " PARTITION OF casbin_rule FOR VALUES IN ('" + ptype + "')");
+            }
+            sqls.add("CREATE TABLE IF NOT EXISTS casbin_rule_default PARTITION OF casbin_rule DEFAULT");
+        } else {
+            sqls.add("CREATE TABLE IF NOT EXISTS casbin_rule(" + columns + ", UNIQUE (id, v" + partitionField + ")) PARTITION BY HASH (v" + partitionField + ")");
+            for (int i = 0; i < partitionCount; i++) {
+                sqls.add("CREATE TABLE IF NOT EXISTS casbin_rule_h" + i + " PARTITION OF casbin_rule FOR VALUES WITH (MODULUS " + partitionCount + ", REMAINDER " + i + ")");
+            }
+        }
+        sqls.add("CREATE INDEX IF NOT EXISTS casbin_rule_ptype_v0 ON casbin_rule (ptype, v0)");
+        for (String sql : sqls) {
+            stmt.executeUpdate(renderActualSql(sql));
+        }
+    }
+
+    private boolean isPartitioned() {
+        return partitionPtypes != null || partitionField >= 0;
+    }
+
+    /**
+     * upgradeHighThroughputSchema converts an existing table to the high-throughput layout, and does nothing
+     * if it is already converted. On Oracle, the id becomes NUMBER(19, 0), the sequence caches 1000 values
+     * and the per-row trigger is dropped, since the inserts of the adapter take the id from the sequence.
+     * On SQL Server, the identity id becomes bigint, recreating the primary key around the change.
+     */
+    private void upgradeHighThroughputSchema(Statement stmt, String productName) throws SQLException {
+        if ("Oracle".equals(productName)) {
+            stmt.executeUpdate(renderActualSql("declare " +
                     "V_NUM number;" +
                     "BEGIN " +
-                    "V_NUM := 0;" +
+                    "select count(0) into V_NUM from user_tab_columns where table_name = UPPER('casbin_rule') and column_name = 'ID' and (data_precision is null or data_precision < 19);" +
+                    "if V_NUM > 0 then " +
+                    "execute immediate 'ALTER TABLE casbin_rule MODIFY (id NUMBER(19, 0))';" +
+                    "end if;" +
+                    "select count(0) into V_NUM from user_sequences where sequence_name = 'CASBIN_SEQUENCE' and cache_size < 1000;" +
+                    "if V_NUM > 0 then " +
+                    "execute immediate 'ALTER SEQUENCE casbin_sequence cache 1000';" +
+                    "end if;" +
                     "select count(0) into V_NUM from user_triggers where trigger_name = 'CASBIN_ID_AUTOINCREMENT';" +
                     "if V_NUM > 0 then " +
-                    "null;" +
-                    "else " +
-                    "execute immediate 'create trigger casbin_id_autoincrement before " +
-                    "                        insert on CASBIN_RULE for each row " +
-                    "                        when (new.id is null) " +
-                    "                        begin " +
-                    "                        select casbin_sequence.nextval into:new.id from dual;" +
-                    "                        end;';" +
+                    "execute immediate 'DROP TRIGGER casbin_id_autoincrement';" +
                     "end if;" +
-                    "END;");
-            stmt.executeUpdate(sql);
-        } else if ("PostgreSQL".equals(productName)) {
-            sql = renderActualSql("CREATE TABLE IF NOT EXISTS casbin_rule(id int NOT NULL PRIMARY KEY default nextval('CASBIN_SEQUENCE'::regclass), ptype VARCHAR(100) NOT NULL, v0 VARCHAR(100), v1 VARCHAR(100), v2 VARCHAR(100), v3 VARCHAR(100), v4 VARCHAR(100), v5 VARCHAR(100))");
-            stmt.executeUpdate(sql);
+                    "END;"));
+        } else if ("Microsoft SQL Server".equals(productName)) {
+            stmt.executeUpdate(renderActualSql("IF EXISTS (SELECT * FROM sys.columns WHERE object_id = OBJECT_ID('casbin_rule') AND name = 'id' AND system_type_id = TYPE_ID('int')) " +
+                    "BEGIN " +
+                    "DECLARE @pk sysname = (SELECT name FROM sys.key_constraints WHERE parent_object_id = OBJECT_ID('casbin_rule') AND type = 'PK'); " +
+                    "IF @pk IS NOT NULL EXEC('ALTER TABLE casbin_rule DROP CONSTRAINT ' + @pk); " +
+                    "ALTER TABLE casbin_rule ALTER COLUMN id bigint NOT NULL; " +
+                    "ALTER TABLE casbin_rule ADD PRIMARY KEY (id); " +
+                    "END"));
+        }
+    }
+
+    /**
+     * createVersionTable creates the single-row casbin_rule_version table bumped by every change.
+     */
+    protected void createVersionTable(Statement stmt, String productName) throws SQLException {
+        String dual = "";
+        switch (productName) {
+            case "Oracle":
+                stmt.executeUpdate(renderActualSql("declare begin execute immediate 'CREATE TABLE casbin_rule_version(id NUMBER(10, 0) not NULL primary key, version NUMBER(19, 0) not NULL)'; " +
+                        "exception when others then " +
+                        "if SQLCODE = -955 then " +
+                        "null; " +
+                        "else raise; " +
+                        "end if; " +
+                        "end;"));
+                dual = " FROM dual";
+                break;
+            case "Microsoft SQL Server":
+                stmt.executeUpdate(renderActualSql("IF NOT EXISTS (SELECT * FROM sysobjects WHERE name='casbin_rule_version' and xtype='U') CREATE TABLE casbin_rule_version(id int NOT NULL primary key, version bigint NOT NULL)"));
+                break;
+            case "PostgreSQL":
+                stmt.executeUpdate(renderActualSql("CREATE TABLE IF NOT EXISTS casbin_rule_version(id int NOT NULL PRIMARY KEY, version bigint NOT NULL)"));
+                break;
+            default:
+                stmt.executeUpdate(renderActualSql("CREATE TABLE IF NOT EXISTS casbin_rule_version(id int NOT NULL PRIMARY KEY, version bigint NOT NULL)"));
+                dual = " FROM dual";
+                break;
+        }
+        stmt.executeUpdate(renderActualSql("INSERT INTO casbin_rule_version (id, version) SELECT 1, 0" + dual +
+                " WHERE NOT EXISTS (SELECT 1 FROM casbin_rule_version)"));
+    }
+
+    /**
+     * createNotifyTrigger installs the PostgreSQL trigger sending a NOTIFY on the casbin_rule channel
+     * after every statement changing the table. The payload is the casbin.instance setting of the session,
+     * which openConnection sets to the instance id of the adapter.
+     */
+    private void createNotifyTrigger(Statement stmt) throws SQLException {
+        stmt.executeUpdate(renderActualSql("CREATE OR REPLACE FUNCTION casbin_rule_notify() RETURNS trigger AS $$ " +
+                "BEGIN " +
+                "PERFORM pg_notify('casbin_rule', COALESCE(current_setting('casbin.instance', true), '')); " +
+                "RETURN NULL; " +
+                "END; " +
+                "$$ LANGUAGE plpgsql"));
+        for (String table : ruleTables()) {
+            stmt.executeUpdate(renderActualSql("DROP TRIGGER IF EXISTS casbin_rule_notify ON ") + table);
+            stmt.executeUpdate(renderActualSql("CREATE TRIGGER casbin_rule_notify AFTER INSERT OR UPDATE OR DELETE OR TRUNCATE ON ") + table +
+                    renderActualSql(" FOR EACH STATEMENT EXECUTE PROCEDURE casbin_rule_notify()"));
+        }
+    }
+
+    /**
+     * supportsChangeNotification returns whether migrate() installs the trigger pushing changes with
+     * LISTEN/NOTIFY, otherwise watchers poll the version table.
+     */
+    protected boolean supportsChangeNotification() throws SQLException {
+        return "PostgreSQL".equals(getDatabaseProductName());
+    }
+
+    /**
+     * createUniqueIndex creates the unique key over (ptype, v0..v5) if it doesn't exist.
+     * Existing duplicates must be removed with deduplicatePolicies first.
+     * Casbin compares the values case-sensitively, so on MySQL and SQL Server, whose default collations don't,
+     * the key columns are switched to a binary collation first, see createBinaryColumns.
+     */
+    private void createUniqueIndex(Statement stmt, String productName) throws SQLException {
+        String ddl = "CREATE UNIQUE INDEX casbin_rule_unique ON casbin_rule (ptype,v0,v1,v2,v3,v4,v5)";
+        createBinaryColumns(stmt, productName);
+        switch (productName) {
+            case "MySQL":
+                try (ResultSet rs = stmt.executeQuery(renderActualSql("SELECT 1 FROM information_schema.statistics WHERE table_schema = DATABASE() AND table_name = 'casbin_rule' AND index_name = 'casbin_rule_unique'"))) {
+                    if (rs.next()) {
+                        return;
+                    }
+                }
+                break;
+            case "Oracle":
+                // ORA-00955 name already used, ORA-01408 columns already indexed.
+                ddl = "declare begin execute immediate '" + ddl + "'; " +
+                        "exception when others then " +
+                        "if SQLCODE = -955 or SQLCODE = -1408 then " +
+                        "null; " +
+                        "else raise; " +
+                        "end if; " +
+                        "end;";
+                break;
+            case "Microsoft SQL Server":
+                ddl = "IF NOT EXISTS (SELECT * FROM sys.indexes WHERE name='casbin_rule_unique') " + ddl;
+                break;
+            default:
+                ddl = "CREATE UNIQUE INDEX IF NOT EXISTS casbin_rule_unique ON casbin_rule (ptype,v0,v1,v2,v3,v4,v5)";
+                break;
+        }
+        stmt.executeUpdate(renderActualSql(ddl));
+    }
+
+    /**
+     * createBinaryColumns switches ptype, v0..v5 to a binary collation on MySQL and SQL Server, if not done yet,
+     * so that the unique key and the upserts tell "Alice" from "alice". On MySQL, the NO PAD utf8mb4_0900_bin
+     * also tells "data1" from "data1 ", where it exists (8.0.17+). On SQL Server, the unique key is dropped
+     * first, since an indexed column can't be altered, and created again by createUniqueIndex.
+     */
+    private void createBinaryColumns(Statement stmt, String productName) throws SQLException {
+        switch (productName) {
+            case "MySQL":
+                String collation = mysqlBinaryCollation(stmt);
+                try (ResultSet rs = stmt.executeQuery(renderActualSql("SELECT collation_name FROM information_schema.columns WHERE table_schema = DATABASE() AND table_name = 'casbin_rule' AND column_name = 'v0'"))) {
+                    if (rs.next() && collation.equals(rs.getString(1))) {
+                        return;
+                    }
+                }
+                String columns = "MODIFY ptype VARCHAR(100) CHARACTER SET utf8mb4 COLLATE " + collation + " NOT NULL";
+                for (int i = 0; i <= 5; i++) {
+                    columns += ", MODIFY v" + i + " VARCHAR(100) CHARACTER SET utf8mb4 COLLATE " + collation;
+                }
+                stmt.executeUpdate(renderActualSql("ALTER TABLE casbin_rule " + columns));
+                break;
+            case "Microsoft SQL Server":
+                String alter = "ALTER TABLE casbin_rule ALTER COLUMN ptype VARCHAR(100) COLLATE Latin1_General_BIN2 NOT NULL; ";
+                for (int i = 0; i <= 5; i++) {
+                    alter += "ALTER TABLE casbin_rule ALTER COLUMN v" + i + " VARCHAR(100) COLLATE Latin1_General_BIN2; ";
+                }
+                stmt.executeUpdate(renderActualSql("IF EXISTS (SELECT * FROM sys.columns WHERE object_id = OBJECT_ID('casbin_rule') AND name = 'v0' AND collation_name <> 'Latin1_General_BIN2') " +
+                        "BEGIN " +
+                        "IF EXISTS (SELECT * FROM sys.indexes WHERE object_id = OBJECT_ID('casbin_rule') AND name = 'casbin_rule_unique') DROP INDEX casbin_rule_unique ON casbin_rule; " +
+                        alter +
+                        "END"));
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * mysqlBinaryCollation returns the binary collation of utf8mb4 on MySQL, utf8mb4_0900_bin where it exists,
+     * which unlike utf8mb4_bin doesn't ignore the trailing spaces.
+     */
+    protected String mysqlBinaryCollation(Statement stmt) throws SQLException {
+        try (ResultSet rs = stmt.executeQuery("SELECT 1 FROM information_schema.collations WHERE collation_name = 'utf8mb4_0900_bin'")) {
+            return rs.next() ? "utf8mb4_0900_bin" : "utf8mb4_bin";
+        }
+    }
+
+    /**
+     * createExpiryColumn adds the nullable expires_at column and its index if they don't exist.
+     * The column holds an instant, so that every session compares it with the clock of the database.
+     */
+    private void createExpiryColumn(Statement stmt, String productName) throws SQLException {
+        String index = "CREATE INDEX casbin_rule_expires_at ON casbin_rule (expires_at)";
+        switch (productName) {
+            case "MySQL":
+                try (ResultSet rs = stmt.executeQuery(renderActualSql("SELECT 1 FROM information_schema.columns WHERE table_schema = DATABASE() AND table_name = 'casbin_rule' AND column_name = 'expires_at'"))) {
+                    if (rs.next()) {
+                        return;
+                    }
+                }
+                stmt.executeUpdate(renderActualSql("ALTER TABLE casbin_rule ADD expires_at TIMESTAMP NULL, ADD INDEX casbin_rule_expires_at (expires_at)"));
+                return;
+            case "Oracle":
+                // ORA-01430 column already exists.
+                stmt.executeUpdate(renderActualSql("declare begin execute immediate 'ALTER TABLE casbin_rule ADD expires_at TIMESTAMP WITH TIME ZONE'; " +
+                        "exception when others then " +
+                        "if SQLCODE = -1430 then " +
+                        "null; " +
+                        "else raise; " +
+                        "end if; " +
+                        "end;"));
+                stmt.executeUpdate(renderActualSql("declare begin execute immediate '" + index + "'; " +
+                        "exception when others then " +
+                        "if SQLCODE = -955 then " +
+                        "null; " +
+                        "else raise; " +
+                        "end if; " +
+                        "end;"));
+                return;
+            case "Microsoft SQL Server":
+                stmt.executeUpdate(renderActualSql("IF COL_LENGTH('casbin_rule', 'expires_at') IS NULL ALTER TABLE casbin_rule ADD expires_at datetimeoffset NULL"));
+                stmt.executeUpdate(renderActualSql("IF NOT EXISTS (SELECT * FROM sys.indexes WHERE name='casbin_rule_expires_at') " + index));
+                return;
+            case "PostgreSQL":
+                stmt.executeUpdate(renderActualSql("ALTER TABLE casbin_rule ADD COLUMN IF NOT EXISTS expires_at timestamptz"));
+                break;
+            default:
+                stmt.executeUpdate(renderActualSql("ALTER TABLE casbin_rule ADD COLUMN IF NOT EXISTS expires_at TIMESTAMP WITH TIME ZONE"));
+                break;
+        }
+        stmt.executeUpdate(renderActualSql("CREATE INDEX IF NOT EXISTS casbin_rule_expires_at ON casbin_rule (expires_at)"));
+    }
+
+    /**
+     * nowSql returns the current instant of the database.
+     */
+    private String nowSql(String productName) {
+        switch (productName) {
+            case "Oracle":
+                return "SYSTIMESTAMP";
+            case "Microsoft SQL Server":
+                return "SYSDATETIMEOFFSET()";
+            default:
+                return "CURRENT_TIMESTAMP";
+        }
+    }
+
+    /**
+     * expiryCondition returns the condition excluding the expired rules, or null without policy expiry.
+     */
+    protected String expiryCondition() throws SQLException {
+        return expiryCondition("expires_at");
+    }
+
+    /**
+     * expiryCondition returns the condition excluding the expired rules on the column, like "r.expires_at".
+     */
+    protected String expiryCondition(String column) throws SQLException {
+        if (!policyExpiry) {
+            return null;
         }
+        return "(" + column + " IS NULL OR " + column + " > " + nowSql(getDatabaseProductName()) + ")";
     }
 
     protected void loadPolicyLine(CasbinRule line, Model model) {
+        Helper.loadPolicyLine(policyLineText(line), model);
+    }
+
+    /**
+     * policyLineText returns the rule as the line parsed by Helper.loadPolicyLine, escaping its fields.
+     */
+    protected String policyLineText(CasbinRule line) {
         escapeCasbinRule(line);
         String lineText = line.ptype;
         if (!"".equals(line.v0)) {
@@ -199,8 +676,7 @@ abstract class JDBCBaseAdapter implements Adapter, BatchAdapter, UpdatableAdapte
         if (!"".equals(line.v5)) {
             lineText += ", " + line.v5;
         }
-
-        Helper.loadPolicyLine(lineText, model);
+        return lineText;
     }
 
     /**
@@ -208,13 +684,26 @@ abstract class JDBCBaseAdapter implements Adapter, BatchAdapter, UpdatableAdapte
      */
     @Override
     public void loadPolicy(Model model) {
-        Failsafe.with(retryPolicy).run(ctx -> {
-            if (ctx.isRetry()) {
-                retry(ctx);
-            }
-            try (Statement stmt = conn.createStatement();
-                 ResultSet rSet = stmt.executeQuery(renderActualSql("SELECT ptype,v0,v1,v2,v3,v4,v5 FROM casbin_rule"))) {
+        loadRules(line -> loadPolicyLine(line, model));
+    }
+
+    /**
+     * loadRules reads all policy rules from the storage, passing each one to the consumer.
+     */
+    protected void loadRules(Consumer<CasbinRule> consumer) {
+        if (hasPtypeTables()) {
+            loadRulesConcurrently(consumer);
+            return;
+        }
+        if (loadPageSize > 0) {
+            loadRulesInPages(consumer);
+            return;
+        }
+        execute(PolicyOperation.LOAD_POLICY, () -> {
+            try (Statement stmt = createStatement(PolicyOperation.LOAD_POLICY);
+                 ResultSet rSet = stmt.executeQuery(renderActualSql("SELECT ptype,v0,v1,v2,v3,v4,v5 FROM casbin_rule" + (expiryCondition() == null ? "" : " WHERE " + expiryCondition())))) {
                 ResultSetMetaData rData = rSet.getMetaData();
+                long rows = 0;
                 while (rSet.next()) {
                     CasbinRule line = new CasbinRule();
                     line.ptype = rSet.getObject(1) == null ? "" : (String) rSet.getObject(1);
@@ -224,314 +713,2654 @@ abstract class JDBCBaseAdapter implements Adapter, BatchAdapter, UpdatableAdapte
                     line.v3 = rSet.getObject(5) == null ? "" : (String) rSet.getObject(5);
                     line.v4 = rSet.getObject(6) == null ? "" : (String) rSet.getObject(6);
                     line.v5 = rSet.getObject(7) == null ? "" : (String) rSet.getObject(7);
-                    loadPolicyLine(line, model);
+                    consumer.accept(line);
+                    rows++;
                 }
+                recordRows(rows);
             }
         });
     }
 
-    private CasbinRule savePolicyLine(String ptype, List<String> rule) {
-        CasbinRule line = new CasbinRule();
+    /**
+     * loadRulesConcurrently reads the rule tables at the same time, each on its own connection from the DataSource,
+     * then passes the rules to the consumer table by table. In an open transaction, the tables are read one after
+     * the other on the connection of the transaction, which sees its own changes.
+     * The reads run on the loader threads of the adapter, and their statements are tracked like the other
+     * loads, so cancel() and the query timeout stop them.
+     */
+    private void loadRulesConcurrently(Consumer<CasbinRule> consumer) {
+        List<String> tables = ruleTables();
+        execute(PolicyOperation.LOAD_POLICY, () -> {
+            String expiry = expiryCondition();
+            String sql = "SELECT ptype,v0,v1,v2,v3,v4,v5 FROM casbin_rule" + (expiry == null ? "" : " WHERE " + expiry);
+            List<List<CasbinRule>> results = new ArrayList<>();
+            if (transactionOpen) {
+                for (String table : tables) {
+                    results.add(readRules(getConnection(), renderTableSql(sql, table)));
+                }
+            } else {
+                ExecutorService executor = loadExecutor();
+                LoadCall call = currentLoad.get();
+                List<Future<List<CasbinRule>>> futures = new ArrayList<>();
+                for (String table : tables) {
+                    futures.add(executor.submit(() -> {
+                        // The statements of the loader thread belong to the load that submitted it.
+                        currentLoad.set(call);
+                        try (Connection connection = dataSource.getConnection()) {
+                            return readRules(connection, renderTableSql(sql, table));
+                        } finally {
+                            currentLoad.remove();
+                        }
+                    }));
+                }
+                try {
+                    for (Future<List<CasbinRule>> future : futures) {
+                        try {
+                            results.add(future.get());
+                        } catch (ExecutionException e) {
+                            throw e.getCause();
+                        }
+                    }
+                } catch (Throwable e) {
+                    // The reads of the other tables would otherwise keep running unattended.
+                    for (Future<List<CasbinRule>> future : futures) {
+                        future.cancel(true);
+                    }
+                    call.cancelStatements();
+                    throw e;
+                }
+            }
+            long rows = 0;
+            for (List<CasbinRule> lines : results) {
+                for (CasbinRule line : lines) {
+                    consumer.accept(line);
+                }
+                rows += lines.size();
+            }
+            recordRows(rows);
+        });
+    }
 
-        line.ptype = ptype;
-        if (rule.size() > 0) {
-            line.v0 = rule.get(0);
-        }
-        if (rule.size() > 1) {
-            line.v1 = rule.get(1);
-        }
-        if (rule.size() > 2) {
-            line.v2 = rule.get(2);
-        }
-        if (rule.size() > 3) {
-            line.v3 = rule.get(3);
-        }
-        if (rule.size() > 4) {
-            line.v4 = rule.get(4);
+    private List<CasbinRule> readRules(Connection connection, String sql) throws SQLException {
+        List<CasbinRule> lines = new ArrayList<>();
+        try (Statement stmt = prepare(PolicyOperation.LOAD_POLICY, connection.createStatement())) {
+            try (ResultSet rSet = stmt.executeQuery(sql)) {
+                while (rSet.next()) {
+                    lines.add(readLine(rSet, 1));
+                }
+            }
         }
-        if (rule.size() > 5) {
-            line.v5 = rule.get(5);
+        return lines;
+    }
+
+    /**
+     * loadExecutor returns the pool of the loader threads reading the rule tables concurrently, started on first use.
+     */
+    private synchronized ExecutorService loadExecutor() {
+        if (loadExecutor == null) {
+            loadExecutor = Executors.newCachedThreadPool(r -> {
+                Thread thread = new Thread(r, "jcasbin-jdbc-loader");
+                thread.setDaemon(true);
+                return thread;
+            });
         }
+        return loadExecutor;
+    }
 
-        return line;
+    /**
+     * loadRulesInPages reads all policy rules in pages ordered by id, using WHERE id > ? for each page.
+     * A page is passed to the consumer only once it is completely read, and the last loaded id survives
+     * retries, so a retry after a connection failure resumes from the next page instead of reloading.
+     */
+    private void loadRulesInPages(Consumer<CasbinRule> consumer) {
+        long[] lastId = {Long.MIN_VALUE};
+        execute(PolicyOperation.LOAD_POLICY, () -> {
+            String sql = renderActualSql(pageSql(""));
+            List<CasbinRule> page = new ArrayList<>(loadPageSize);
+            do {
+                page.clear();
+                long pageLastId = lastId[0];
+                try (PreparedStatement ps = prepareStatement(PolicyOperation.LOAD_POLICY, sql)) {
+                    ps.setLong(1, pageLastId);
+                    ps.setInt(2, loadPageSize);
+                    try (ResultSet rSet = ps.executeQuery()) {
+                        while (rSet.next()) {
+                            pageLastId = rSet.getLong(1);
+                            page.add(readLine(rSet, 2));
+                        }
+                    }
+                }
+                for (CasbinRule line : page) {
+                    consumer.accept(line);
+                }
+                recordRows(page.size());
+                lastId[0] = pageLastId;
+            } while (page.size() == loadPageSize);
+        });
     }
 
     /**
-     * savePolicy saves all policy rules to the storage.
+     * loadPolicyIfChanged reloads the model only if the policy changed since the last time this model was
+     * loaded by this method, comparing a fingerprint computed by the database instead of reading the rules.
+     * The model is cleared before being reloaded, so the role links must be rebuilt when it returns true.
+     *
+     * @return whether the model was reloaded.
      */
-    @Override
-    public void savePolicy(Model model) {
-        String cleanSql = renderActualSql("delete from casbin_rule");
-        String addSql = renderActualSql("INSERT INTO casbin_rule (ptype,v0,v1,v2,v3,v4,v5) VALUES(?,?,?,?,?,?,?)");
+    public boolean loadPolicyIfChanged(Model model) {
+        // The fingerprint is taken before loading, so a change made during the load triggers the next reload.
+        String fingerprint = getPolicyFingerprint();
+        if (fingerprint.equals(fingerprints.get(model))) {
+            return false;
+        }
+        model.clearPolicy();
+        loadPolicy(model);
+        fingerprints.put(model, fingerprint);
+        return true;
+    }
 
-        Failsafe.with(retryPolicy).run(ctx -> {
-            if (ctx.isRetry()) {
-                retry(ctx);
+    /**
+     * getPolicyFingerprint returns a value that changes whenever the policy changes.
+     * With change tracking, it is the version row, read by primary key. Without it, it is the row count,
+     * the highest id and an aggregate hash of the rules, computed by the database in one query.
+     */
+    public String getPolicyFingerprint() {
+        if (changeTracking) {
+            return "version:" + getPolicyVersion();
+        }
+        String[] fingerprint = new String[1];
+        execute(PolicyOperation.QUERY_POLICY, () -> {
+            List<String> parts = new ArrayList<>();
+            for (String table : ruleTables()) {
+                try (Statement stmt = createStatement(PolicyOperation.QUERY_POLICY);
+                     ResultSet rSet = stmt.executeQuery(renderTableSql(fingerprintSql(), table))) {
+                    rSet.next();
+                    parts.add(rSet.getString(1) + ":" + rSet.getString(2) + ":" + rSet.getString(3));
+                }
             }
-            conn.setAutoCommit(false);
+            fingerprint[0] = String.join("/", parts);
+        });
+        return fingerprint[0];
+    }
 
-            int count = 0;
+    /**
+     * fingerprintSql returns the query of the row count, the highest id and an aggregate hash of the rules.
+     * The rules are hashed like reconcile hashes them: a missing field is '' rather than skipped, so it keeps
+     * the position of the next ones, and SQL Server hashes the bytes with HASHBYTES, which ignore the collation.
+     * Like the loads, it skips the expired rules, so a rule passing its expiry changes the fingerprint.
+     */
+    protected String fingerprintSql() throws SQLException {
+        String hash;
+        if ("Oracle".equals(getDatabaseProductName())) {
+            // Oracle stores '' as NULL, and || concatenates NULL as '', which keeps the positions.
+            hash = "SUM(ORA_HASH(ptype || '|' || v0 || '|' || v1 || '|' || v2 || '|' || v3 || '|' || v4 || '|' || v5))";
+        } else {
+            hash = "SUM(" + md5PrefixSql(RULE_COLUMNS) + ")";
+        }
+        String expiry = expiryCondition();
+        return "SELECT COUNT(*), MAX(id), " + hash + " FROM casbin_rule" + (expiry == null ? "" : " WHERE " + expiry);
+    }
+
+    /**
+     * reconcile repairs a model that drifted from the storage, without reloading it.
+     * The rules are split into buckets by a hash of (ptype, v0), and the database computes the count and the
+     * sum of the rule hashes of every bucket in one query, compared with the same values computed over the model.
+     * Only the rules of the mismatched buckets are then read, and the model is updated to match them.
+     * The rules of the ptypes not defined by the model are ignored, and the role links must be rebuilt
+     * when g rules changed. On Oracle 11g, it requires the EXECUTE privilege on DBMS_CRYPTO.
+     *
+     * @return the number of rules added to or removed from the model, 0 if it was in sync.
+     */
+    public int reconcile(Model model) {
+        return reconcile(model, DEFAULT_RECONCILE_BUCKETS);
+    }
+
+    /**
+     * reconcile repairs a model that drifted from the storage, without reloading it.
+     *
+     * @param buckets the number of buckets: more buckets make the comparison larger and the repairs smaller.
+     * @return the number of rules added to or removed from the model, 0 if it was in sync.
+     */
+    public int reconcile(Model model, int buckets) {
+        if (buckets <= 0) {
+            throw new IllegalArgumentException("Invalid number of buckets: " + buckets);
+        }
+        Charset charset;
+        try {
+            charset = hashCharset();
+        } catch (SQLException e) {
+            throw new CasbinAdapterException("Failed to read the database product name.", e);
+        }
+        List<String> ptypes = new ArrayList<>();
+        Map<Integer, long[]> expected = new HashMap<>();
+        for (String section : new String[]{"p", "g"}) {
+            if (!model.model.containsKey(section)) {
+                continue;
+            }
+            for (Map.Entry<String, Assertion> entry : model.model.get(section).entrySet()) {
+                ptypes.add(entry.getKey());
+                // A rule counts once, however many times it is stored, so duplicate rows don't leave a bucket mismatched.
+                for (List<String> rule : new HashSet<>(entry.getValue().policy)) {
+                    addToBucket(expected, bucket(entry.getKey(), rule, buckets, charset), ruleHash(entry.getKey(), rule, charset));
+                }
+            }
+        }
+        if (ptypes.isEmpty()) {
+            return 0;
+        }
+
+        Map<Integer, long[]> actual = new HashMap<>();
+        execute(PolicyOperation.QUERY_POLICY, () -> {
+            actual.clear();
+            String sql = "SELECT b, COUNT(*), SUM(h) FROM (" + bucketSql(ptypes.size(), buckets, md5PrefixSql(RULE_COLUMNS) + " h", true) + ") t GROUP BY b";
+            for (String table : ruleTables()) {
+                try (PreparedStatement ps = prepareStatement(PolicyOperation.QUERY_POLICY, renderTableSql(sql, table))) {
+                    for (int i = 0; i < ptypes.size(); i++) {
+                        ps.setString(i + 1, ptypes.get(i));
+                    }
+                    try (ResultSet rSet = ps.executeQuery()) {
+                        while (rSet.next()) {
+                            long[] totals = actual.computeIfAbsent(rSet.getInt(1), k -> new long[2]);
+                            totals[0] += rSet.getLong(2);
+                            totals[1] += rSet.getLong(3);
+                        }
+                    }
+                }
+            }
+        });
+
+        List<Integer> mismatched = new ArrayList<>();
+        Set<Integer> keys = new HashSet<>(expected.keySet());
+        keys.addAll(actual.keySet());
+        for (Integer key : keys) {
+            if (!Arrays.equals(expected.get(key), actual.get(key))) {
+                mismatched.add(key);
+            }
+        }
+        if (mismatched.isEmpty()) {
+            return 0;
+        }
+
+        Map<String, Set<List<String>>> stored = new HashMap<>();
+        execute(PolicyOperation.LOAD_FILTERED_POLICY, () -> {
+            stored.clear();
+            long rows = 0;
+            for (int from = 0; from < mismatched.size(); from += batchSize) {
+                List<Integer> chunk = mismatched.subList(from, Math.min(from + batchSize, mismatched.size()));
+                // The bucket numbers are computed by the adapter, so they are inlined.
+                String sql = "SELECT ptype,v0,v1,v2,v3,v4,v5 FROM (" + bucketSql(ptypes.size(), buckets, "ptype,v0,v1,v2,v3,v4,v5", false) +
+                        ") t WHERE b IN (" + chunk.stream().map(String::valueOf).collect(Collectors.joining(",")) + ")";
+                for (String table : ruleTables()) {
+                    try (PreparedStatement ps = prepareStatement(PolicyOperation.LOAD_FILTERED_POLICY, renderTableSql(sql, table))) {
+                        for (int i = 0; i < ptypes.size(); i++) {
+                            ps.setString(i + 1, ptypes.get(i));
+                        }
+                        try (ResultSet rSet = ps.executeQuery()) {
+                            while (rSet.next()) {
+                                CasbinRule line = readLine(rSet, 1);
+                                stored.computeIfAbsent(line.ptype, k -> new LinkedHashSet<>()).add(toRule(line));
+                                rows++;
+                            }
+                        }
+                    }
+                }
+            }
+            recordRows(rows);
+        });
+
+        Set<Integer> repaired = new HashSet<>(mismatched);
+        int changes = 0;
+        for (String section : new String[]{"p", "g"}) {
+            if (!model.model.containsKey(section)) {
+                continue;
+            }
+            for (Map.Entry<String, Assertion> entry : model.model.get(section).entrySet()) {
+                String ptype = entry.getKey();
+                Set<List<String>> rules = stored.getOrDefault(ptype, Collections.emptySet());
+                List<List<String>> removed = new ArrayList<>();
+                for (List<String> rule : entry.getValue().policy) {
+                    if (repaired.contains(bucket(ptype, rule, buckets, charset)) && !rules.contains(rule)) {
+                        removed.add(rule);
+                    }
+                }
+                for (List<String> rule : removed) {
+                    if (model.removePolicy(section, ptype, rule)) {
+                        changes++;
+                    }
+                }
+                for (List<String> rule : rules) {
+                    if (model.addPolicy(section, ptype, rule)) {
+                        changes++;
+                    }
+                }
+            }
+        }
+        return changes;
+    }
+
+    /**
+     * bucketSql returns the query of the bucket b of the rules of the ptypes given as parameters, with the columns.
+     * The bucket is the hash of (ptype, v0) modulo the number of buckets, where a hash is the first 4 bytes of
+     * the MD5 of the fields joined with '|', read as an unsigned integer, like bucket and ruleHash compute them.
+     *
+     * @param distinct whether the duplicate rows are read once.
+     */
+    private String bucketSql(int ptypes, int buckets, String columns, boolean distinct) throws SQLException {
+        String key = md5PrefixSql(Arrays.copyOf(RULE_COLUMNS, 2));
+        String bucket = "Microsoft SQL Server".equals(getDatabaseProductName()) ? key + " % " + buckets : "MOD(" + key + ", " + buckets + ")";
+        String expiry = expiryCondition();
+        String where = " WHERE ptype IN (" + String.join(",", Collections.nCopies(ptypes, "?")) + ")" +
+                (expiry == null ? "" : " AND " + expiry);
+        if (distinct) {
+            // Missing fields stored as NULL or as empty string are the same rule.
+            return "SELECT " + bucket + " b, " + columns + " FROM (SELECT DISTINCT ptype, COALESCE(v0, '') v0, COALESCE(v1, '') v1, " +
+                    "COALESCE(v2, '') v2, COALESCE(v3, '') v3, COALESCE(v4, '') v4, COALESCE(v5, '') v5 FROM casbin_rule" + where + ") d";
+        }
+        return "SELECT " + bucket + " b, " + columns + " FROM casbin_rule" + where;
+    }
+
+    /**
+     * md5PrefixSql returns the first 32 bits of the MD5 of the columns joined with '|', like md5Prefix computes them.
+     * Oracle only has STANDARD_HASH since 12c: on 11g, the hash is computed with DBMS_CRYPTO, which requires
+     * the EXECUTE privilege on the package, not granted to PUBLIC by default.
+     */
+    private String md5PrefixSql(String[] columns) throws SQLException {
+        String productName = getDatabaseProductName();
+        List<String> fields = new ArrayList<>();
+        for (String column : columns) {
+            fields.add("ptype".equals(column) || "Oracle".equals(productName) ? column : "COALESCE(" + column + ", '')");
+        }
+        switch (productName) {
+            case "MySQL":
+                return "CAST(CONV(SUBSTRING(MD5(CONCAT_WS('|', " + String.join(", ", fields) + ")), 1, 8), 16, 10) AS UNSIGNED)";
+            case "PostgreSQL":
+                return "('x' || substr(md5(CONCAT_WS('|', " + String.join(", ", fields) + ")), 1, 8))::bit(32)::bigint";
+            case "Microsoft SQL Server":
+                // Hashing varchar would hash the bytes of its code page, nvarchar hashes UTF-16LE like hashCharset.
+                List<String> unicode = new ArrayList<>();
+                for (String field : fields) {
+                    unicode.add("CAST(" + field + " AS nvarchar(max))");
+                }
+                return "CAST(SUBSTRING(HASHBYTES('MD5', CONCAT(" + String.join(", N'|', ", unicode) + ")), 1, 4) AS bigint)";
+            case "Oracle":
+                // Oracle stores '' as NULL, and || concatenates NULL as ''.
+                // The bytes are UTF-8 like hashCharset, whatever the character set of the database.
+                String bytes = "UTL_I18N.STRING_TO_RAW(" + String.join(" || '|' || ", fields) + ", 'AL32UTF8')";
+                String md5 = getConnection().getMetaData().getDatabaseMajorVersion() >= 12
+                        ? "STANDARD_HASH(" + bytes + ", 'MD5')"
+                        // 2 is DBMS_CRYPTO.HASH_MD5, whose name can't be used in SQL.
+                        : "DBMS_CRYPTO.HASH(" + bytes + ", 2)";
+                return "TO_NUMBER(SUBSTR(RAWTOHEX(" + md5 + "), 1, 8), 'XXXXXXXX')";
+            default:
+                return "CAST(X'00000000' || SUBSTRING(HASH('MD5', CONCAT_WS('|', " + String.join(", ", fields) + ")) FROM 1 FOR 4) AS BIGINT)";
+        }
+    }
+
+    /**
+     * hashCharset returns the encoding of the strings hashed by md5PrefixSql: UTF-16LE for the nvarchar
+     * of SQL Server, UTF-8 for the other databases.
+     */
+    private Charset hashCharset() throws SQLException {
+        return "Microsoft SQL Server".equals(getDatabaseProductName()) ? StandardCharsets.UTF_16LE : StandardCharsets.UTF_8;
+    }
+
+    private static int bucket(String ptype, List<String> rule, int buckets, Charset charset) {
+        return (int) (md5Prefix(ptype + "|" + (rule.isEmpty() ? "" : rule.get(0)), charset) % buckets);
+    }
+
+    private static long ruleHash(String ptype, List<String> rule, Charset charset) {
+        StringBuilder value = new StringBuilder(ptype);
+        for (int i = 0; i <= 5; i++) {
+            value.append('|').append(i < rule.size() ? rule.get(i) : "");
+        }
+        return md5Prefix(value.toString(), charset);
+    }
+
+    private static long md5Prefix(String value, Charset charset) {
+        byte[] digest;
+        try {
+            digest = MessageDigest.getInstance("MD5").digest(value.getBytes(charset));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        return (digest[0] & 0xFFL) << 24 | (digest[1] & 0xFFL) << 16 | (digest[2] & 0xFFL) << 8 | digest[3] & 0xFFL;
+    }
+
+    private static void addToBucket(Map<Integer, long[]> buckets, int bucket, long hash) {
+        long[] totals = buckets.computeIfAbsent(bucket, k -> new long[2]);
+        totals[0]++;
+        totals[1] += hash;
+    }
+
+    /**
+     * pageSql returns the query reading the rules after an id that match the condition,
+     * with the parameters id, the ones of the condition and the page size.
+     */
+    protected String pageSql(String condition) throws SQLException {
+        String expiry = expiryCondition();
+        return limitSql("SELECT id,ptype,v0,v1,v2,v3,v4,v5 FROM casbin_rule WHERE id > ?" + condition + (expiry == null ? "" : " AND " + expiry) + " ORDER BY id");
+    }
+
+    /**
+     * limitSql limits the rows of the query to the last parameter.
+     */
+    protected String limitSql(String query) throws SQLException {
+        return limitSql(query, getDatabaseProductName());
+    }
+
+    private static String limitSql(String query, String productName) {
+        switch (productName) {
+            case "Oracle":
+                return "SELECT * FROM (" + query + ") WHERE ROWNUM <= ?";
+            case "Microsoft SQL Server":
+                return query + " OFFSET 0 ROWS FETCH NEXT ? ROWS ONLY";
+            default:
+                return query + " LIMIT ?";
+        }
+    }
+
+    /**
+     * setLoadPageSize sets the number of rules read per query by loadPolicy.
+     * When set, loadPolicy reads the table in keyset pages instead of one long-running query,
+     * and resumes from the last completed page when retried.
+     *
+     * @param pageSize the number of rules per page, 0 means the whole table in one query.
+     */
+    public void setLoadPageSize(int pageSize) {
+        this.loadPageSize = pageSize;
+    }
+
+    /**
+     * readLine reads ptype, v0..v5 from the current row starting at the column, with NULLs read as "".
+     */
+    protected CasbinRule readLine(ResultSet rSet, int column) throws SQLException {
+        CasbinRule line = new CasbinRule();
+        line.ptype = rSet.getObject(column) == null ? "" : (String) rSet.getObject(column);
+        line.v0 = rSet.getObject(column + 1) == null ? "" : (String) rSet.getObject(column + 1);
+        line.v1 = rSet.getObject(column + 2) == null ? "" : (String) rSet.getObject(column + 2);
+        line.v2 = rSet.getObject(column + 3) == null ? "" : (String) rSet.getObject(column + 3);
+        line.v3 = rSet.getObject(column + 4) == null ? "" : (String) rSet.getObject(column + 4);
+        line.v4 = rSet.getObject(column + 5) == null ? "" : (String) rSet.getObject(column + 5);
+        line.v5 = rSet.getObject(column + 6) == null ? "" : (String) rSet.getObject(column + 6);
+        return line;
+    }
+
+    protected CasbinRule savePolicyLine(String ptype, List<String> rule) {
+        CasbinRule line = new CasbinRule();
+
+        line.ptype = ptype;
+        if (rule.size() > 0) {
+            line.v0 = rule.get(0);
+        }
+        if (rule.size() > 1) {
+            line.v1 = rule.get(1);
+        }
+        if (rule.size() > 2) {
+            line.v2 = rule.get(2);
+        }
+        if (rule.size() > 3) {
+            line.v3 = rule.get(3);
+        }
+        if (rule.size() > 4) {
+            line.v4 = rule.get(4);
+        }
+        if (rule.size() > 5) {
+            line.v5 = rule.get(5);
+        }
+
+        return line;
+    }
+
+    /**
+     * savePolicy saves all policy rules to the storage.
+     * With setPolicyExpiry, the saved rules which are still stored with an unexpired expiry keep it,
+     * see replaceAllRules.
+     */
+    @Override
+    public void savePolicy(Model model) {
+        if (hasPtypeTables() || policyExpiry) {
+            // The rules are routed to their tables, or merged with the expiring ones, so the tables are
+            // rewritten in place in one transaction.
+            List<CasbinRule> lines = modelLines(model);
+            execute(PolicyOperation.SAVE_POLICY, () -> transactional(() -> replaceAllRules(PolicyOperation.SAVE_POLICY, lines)));
+            return;
+        }
+        if (shadowSave && !transactionOpen) {
+            saveShadowPolicy(model);
+            return;
+        }
+        String cleanSql = renderActualSql("delete from casbin_rule");
+        execute(PolicyOperation.SAVE_POLICY, () -> transactional(() -> {
+            int count = 0;
+
+            try (Statement statement = createStatement(PolicyOperation.SAVE_POLICY); PreparedStatement ps = prepareStatement(PolicyOperation.SAVE_POLICY, insertSql())) {
+                statement.execute(cleanSql);
+                count = saveSectionPolicyWithBatch(model, "p", ps, count);
+                count = saveSectionPolicyWithBatch(model, "g", ps, count);
+
+                if (count != 0) {
+                    executeBatch(ps);
+                }
+            }
+        }));
+    }
+
+    /**
+     * saveShadowPolicy writes the rules into the casbin_rule_shadow staging table, then swaps it with the
+     * live table by renaming both, so the live table is only locked for the renames.
+     * Oracle renames are not transactional, so Oracle rewrites the live table in one transaction instead,
+     * like a partitioned PostgreSQL table, whose partitions would not follow the renames.
+     * With setPolicyExpiry, savePolicy always rewrites the live table, which keeps the expiry of the rules.
+     */
+    private void saveShadowPolicy(Model model) {
+        List<CasbinRule> lines = modelLines(model);
+        // The staging table must be committed before the connections filling it can see it,
+        // so the swap can't run in the transaction of the version, and bumps it after the swap instead.
+        traced(PolicyOperation.SAVE_POLICY, null, false, () -> {
+            String productName = getDatabaseProductName();
+            // A staging table can't take over the partitions of the live table.
+            if ("Oracle".equals(productName) || ("PostgreSQL".equals(productName) && isPartitioned())) {
+                if (changeTracking) {
+                    commitWithVersion(() -> replaceAllRules(PolicyOperation.SAVE_POLICY, lines));
+                } else {
+                    transactional(() -> replaceAllRules(PolicyOperation.SAVE_POLICY, lines));
+                }
+                return;
+            }
+
+            String lockName = renderActualSql("casbin_rule_shadow");
+            if (!lockShadowSave(productName, lockName)) {
+                // Without database locks (H2), only the saves of this process can collide.
+                synchronized (SHADOW_SAVE_LOCKS.computeIfAbsent(lockName, k -> new Object())) {
+                    swapShadowTable(lines, productName);
+                }
+                return;
+            }
+            try {
+                swapShadowTable(lines, productName);
+            } finally {
+                unlockShadowSave(productName, lockName);
+            }
+        });
+    }
+
+    /**
+     * swapShadowTable fills a new casbin_rule_shadow table with the rules and swaps it with the live table,
+     * holding the shadow save lock.
+     */
+    private void swapShadowTable(List<CasbinRule> lines, String productName) throws Throwable {
+        try (Statement stmt = createStatement(PolicyOperation.SAVE_POLICY)) {
+            // Leftovers of an interrupted save.
+            stmt.executeUpdate(renderActualSql("DROP TABLE IF EXISTS casbin_rule_shadow"));
+            stmt.executeUpdate(renderActualSql("DROP TABLE IF EXISTS casbin_rule_old"));
+            createShadowTable(stmt, productName);
+        }
+        fillShadowTable(lines);
+        recordRows(lines.size());
+
+        try (Statement stmt = createStatement(PolicyOperation.SAVE_POLICY)) {
+            switch (productName) {
+                case "MySQL":
+                    stmt.executeUpdate(renderActualSql("RENAME TABLE casbin_rule TO casbin_rule_old, casbin_rule_shadow TO casbin_rule"));
+                    break;
+                case "Microsoft SQL Server":
+                    transactional(() -> {
+                        stmt.execute(renderActualSql("EXEC sp_rename 'casbin_rule', 'casbin_rule_old'"));
+                        stmt.execute(renderActualSql("EXEC sp_rename 'casbin_rule_shadow', 'casbin_rule'"));
+                    });
+                    break;
+                default:
+                    transactional(() -> {
+                        stmt.executeUpdate(renderActualSql("ALTER TABLE casbin_rule RENAME TO casbin_rule_old"));
+                        stmt.executeUpdate(renderActualSql("ALTER TABLE casbin_rule_shadow RENAME TO casbin_rule"));
+                    });
+                    break;
+            }
+            stmt.executeUpdate(renderActualSql("DROP TABLE casbin_rule_old"));
+            if (uniquePolicies && !"MySQL".equals(productName) && !"Microsoft SQL Server".equals(productName)) {
+                stmt.executeUpdate(renderActualSql("ALTER INDEX casbin_rule_shadow_unique RENAME TO casbin_rule_unique"));
+            }
+            if (policyExpiry) {
+                createExpiryColumn(stmt, productName);
+            }
+            if (changeTracking && supportsChangeNotification()) {
+                createNotifyTrigger(stmt);
+                // Neither the fill of the staging table nor the renames fire the trigger.
+                stmt.execute(renderActualSql("NOTIFY casbin_rule, '" + instanceId + "'"));
+            }
+        }
+        if (changeTracking) {
+            bumpVersion(getConnection());
+        }
+    }
+
+    /**
+     * lockShadowSave takes the session lock serializing the shadow saves of the table across nodes,
+     * which would otherwise drop each other's casbin_rule_shadow. It returns false if the database has none.
+     */
+    private boolean lockShadowSave(String productName, String lockName) throws SQLException {
+        String sql;
+        switch (productName) {
+            case "MySQL":
+                sql = "SELECT GET_LOCK(?, -1)";
+                break;
+            case "PostgreSQL":
+                sql = "SELECT pg_advisory_lock(hashtext(?))";
+                break;
+            case "Microsoft SQL Server":
+                sql = "SET NOCOUNT ON; DECLARE @result int; EXEC @result = sp_getapplock @Resource = ?, @LockMode = 'Exclusive', "
+                        + "@LockOwner = 'Session', @LockTimeout = -1; SELECT @result";
+                break;
+            default:
+                return false;
+        }
+        try (PreparedStatement ps = prepareStatement(PolicyOperation.SAVE_POLICY, sql)) {
+            ps.setString(1, lockName);
+            try (ResultSet rSet = ps.executeQuery()) {
+                // pg_advisory_lock waits until locked, GET_LOCK returns 1 once locked and sp_getapplock a non-negative status.
+                int minimum = "MySQL".equals(productName) ? 1 : 0;
+                if (!rSet.next() || (!"PostgreSQL".equals(productName) && rSet.getInt(1) < minimum)) {
+                    throw new SQLException("Failed to lock the shadow save of " + lockName + ".");
+                }
+            }
+        }
+        return true;
+    }
+
+    private void unlockShadowSave(String productName, String lockName) throws SQLException {
+        String sql;
+        switch (productName) {
+            case "MySQL":
+                sql = "SELECT RELEASE_LOCK(?)";
+                break;
+            case "PostgreSQL":
+                sql = "SELECT pg_advisory_unlock(hashtext(?))";
+                break;
+            default:
+                sql = "EXEC sp_releaseapplock @Resource = ?, @LockOwner = 'Session'";
+                break;
+        }
+        try (PreparedStatement ps = prepareStatement(PolicyOperation.SAVE_POLICY, sql)) {
+            ps.setString(1, lockName);
+            ps.execute();
+        }
+    }
+
+    private List<CasbinRule> modelLines(Model model) {
+        List<CasbinRule> lines = new ArrayList<>();
+        for (String section : new String[]{"p", "g"}) {
+            if (!model.model.containsKey(section)) {
+                continue;
+            }
+            for (Map.Entry<String, Assertion> entry : model.model.get(section).entrySet()) {
+                for (List<String> rule : entry.getValue().policy) {
+                    lines.add(savePolicyLine(entry.getKey(), rule));
+                }
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * createShadowTable creates the empty casbin_rule_shadow table with the columns, keys and identity of casbin_rule.
+     * Index names are global in PostgreSQL and H2, so the unique key is created as casbin_rule_shadow_unique
+     * and renamed after the swap. On PostgreSQL, the id default keeps drawing from CASBIN_SEQUENCE, which no table
+     * owns, so the ids keep increasing across swaps and dropping the old table leaves the sequence in place.
+     */
+    private void createShadowTable(Statement stmt, String productName) throws SQLException {
+        String columns = "(ptype,v0,v1,v2,v3,v4,v5)";
+        switch (productName) {
+            case "MySQL":
+                stmt.executeUpdate(renderActualSql("CREATE TABLE casbin_rule_shadow LIKE casbin_rule"));
+                return;
+            case "Microsoft SQL Server":
+                stmt.executeUpdate(renderActualSql("SELECT * INTO casbin_rule_shadow FROM casbin_rule WHERE 1 = 0"));
+                stmt.executeUpdate(renderActualSql("ALTER TABLE casbin_rule_shadow ADD PRIMARY KEY (id)"));
+                if (uniquePolicies) {
+                    stmt.executeUpdate(renderActualSql("CREATE UNIQUE INDEX casbin_rule_unique ON casbin_rule_shadow " + columns));
+                }
+                return;
+            case "PostgreSQL":
+                stmt.executeUpdate(renderActualSql("CREATE TABLE casbin_rule_shadow (LIKE casbin_rule INCLUDING DEFAULTS, PRIMARY KEY (id))"));
+                break;
+            default:
+                stmt.executeUpdate(renderActualSql("CREATE TABLE casbin_rule_shadow(id int GENERATED ALWAYS AS IDENTITY PRIMARY KEY, ptype VARCHAR(100) NOT NULL, v0 VARCHAR(100), v1 VARCHAR(100), v2 VARCHAR(100), v3 VARCHAR(100), v4 VARCHAR(100), v5 VARCHAR(100)" +
+                        (policyExpiry ? ", expires_at TIMESTAMP WITH TIME ZONE" : "") + ")"));
+                break;
+        }
+        if (uniquePolicies) {
+            stmt.executeUpdate(renderActualSql("CREATE UNIQUE INDEX casbin_rule_shadow_unique ON casbin_rule_shadow " + columns));
+        }
+    }
+
+    /**
+     * fillShadowTable inserts the lines into casbin_rule_shadow, split between shadowSaveParallelism connections.
+     * The connections are opened like the one of the adapter, so the watcher knows them, and their statements
+     * get the query timeout of SAVE_POLICY. Like every save, the fill is not stopped by cancel(), which only stops loads.
+     */
+    private void fillShadowTable(List<CasbinRule> lines) throws Throwable {
+        String sql = renderActualSql("INSERT INTO casbin_rule_shadow (ptype,v0,v1,v2,v3,v4,v5) VALUES(?,?,?,?,?,?,?)");
+        int parts = Math.max(1, Math.min(shadowSaveParallelism, (lines.size() + batchSize - 1) / batchSize));
+        if (parts == 1) {
+            transactional(() -> insertBatches(getConnection(), sql, lines));
+            return;
+        }
+
+        int partSize = (lines.size() + parts - 1) / parts;
+        ExecutorService executor = Executors.newFixedThreadPool(parts);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int from = 0; from < lines.size(); from += partSize) {
+                List<CasbinRule> part = lines.subList(from, Math.min(from + partSize, lines.size()));
+                futures.add(executor.submit(() -> {
+                    Connection connection = openConnection();
+                    try {
+                        connection.setAutoCommit(false);
+                        insertBatches(connection, sql, part);
+                        connection.commit();
+                    } finally {
+                        closeConnection(connection);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    throw e.getCause();
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void insertBatches(Connection connection, String sql, List<CasbinRule> lines) throws SQLException {
+        try (PreparedStatement ps = prepare(PolicyOperation.SAVE_POLICY, connection.prepareStatement(sql))) {
+            int count = 0;
+            for (CasbinRule line : lines) {
+                setRuleParameters(ps, line);
+                ps.addBatch();
+                if (++count == batchSize) {
+                    count = 0;
+                    ps.executeBatch();
+                    ps.clearBatch();
+                }
+            }
+            if (count != 0) {
+                ps.executeBatch();
+            }
+        }
+    }
+
+    /**
+     * saveSectionPolicyWithBatch saves section policy rules to the storage.
+     * as a helper function for savePolicy
+     * only when the batchCount exceeds the batchSize will the actual save operation be performed
+     */
+    private int saveSectionPolicyWithBatch(Model model, String section, PreparedStatement ps, int batchCount) throws SQLException {
+        if (!model.model.containsKey(section)) return batchCount;
+        for (Map.Entry<String, Assertion> entry : model.model.get(section).entrySet()) {
+            String ptype = entry.getKey();
+            Assertion ast = entry.getValue();
+
+            for (List<String> rule : ast.policy) {
+                CasbinRule line = savePolicyLine(ptype, rule);
+
+                setRuleParameters(ps, line);
+
+                ps.addBatch();
+                if (++batchCount == batchSize) {
+                    batchCount = 0;
+                    executeBatch(ps);
+                    ps.clearBatch();
+                }
+            }
+        }
+        return batchCount;
+    }
+
+    /**
+     * addPolicy adds a policy rule to the storage.
+     */
+    @Override
+    public void addPolicy(String sec, String ptype, List<String> rule) {
+        List<List<String>> rules = new ArrayList<>();
+        rules.add(rule);
+        this.addPolicies(sec, ptype, rules);
+    }
+
+    @Override
+    public void addPolicies(String sec, String ptype, List<List<String>> rules) {
+        if (CollectionUtils.isEmpty(rules)) {
+            return;
+        }
+
+        execute(PolicyOperation.ADD_POLICY, ptype, () -> transactional(() -> {
+            int count = 0;
+            try (PreparedStatement ps = prepareStatement(PolicyOperation.ADD_POLICY, insertSql())) {
+                for (List<String> rule : rules) {
+                    CasbinRule line = savePolicyLine(ptype, rule);
+
+                    setRuleParameters(ps, line);
+                    ps.addBatch();
+                    if (++count == batchSize) {
+                        count = 0;
+                        executeBatch(ps);
+                        ps.clearBatch();
+                    }
+                }
+                if (count != 0) {
+                    executeBatch(ps);
+                }
+            }
+        }));
+    }
+
+    /**
+     * addPolicies adds rules expiring after the ttl, computed with the clock of the database.
+     * The expired rules are not loaded anymore, and are deleted by pruneExpiredPolicies.
+     * It requires setPolicyExpiry. The model doesn't know the expiry, so savePolicy and importPolicies
+     * keep the expiry of the stored rules they save again, see replaceAllRules.
+     *
+     * @param ttl the time to live of the rules, in whole seconds.
+     */
+    public void addPolicies(String sec, String ptype, List<List<String>> rules, Duration ttl) {
+        if (!policyExpiry) {
+            throw new IllegalStateException("Policy expiry is not enabled, see setPolicyExpiry.");
+        }
+        if (ttl.isNegative() || ttl.getSeconds() > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Invalid ttl: " + ttl);
+        }
+        if (CollectionUtils.isEmpty(rules)) {
+            return;
+        }
+
+        execute(PolicyOperation.ADD_POLICY, ptype, () -> transactional(() -> {
+            int count = 0;
+            try (PreparedStatement ps = prepareStatement(PolicyOperation.ADD_POLICY, insertWithExpirySql())) {
+                for (List<String> rule : rules) {
+                    CasbinRule line = savePolicyLine(ptype, rule);
+
+                    setRuleParameters(ps, line);
+                    ps.setInt(8, (int) ttl.getSeconds());
+                    ps.addBatch();
+                    if (++count == batchSize) {
+                        count = 0;
+                        executeBatch(ps);
+                        ps.clearBatch();
+                    }
+                }
+                if (count != 0) {
+                    executeBatch(ps);
+                }
+            }
+        }));
+    }
+
+    /**
+     * insertWithExpirySql returns the statement inserting a rule with ptype, v0..v5 and the ttl in seconds.
+     * With setUniquePolicies, an existing rule is left as it is.
+     */
+    private String insertWithExpirySql() throws SQLException {
+        String productName = getDatabaseProductName();
+        String expiresAt;
+        switch (productName) {
+            case "MySQL":
+                expiresAt = "CURRENT_TIMESTAMP + INTERVAL ? SECOND";
+                break;
+            case "PostgreSQL":
+                expiresAt = "CURRENT_TIMESTAMP + ? * INTERVAL '1 second'";
+                break;
+            case "Oracle":
+                expiresAt = "SYSTIMESTAMP + NUMTODSINTERVAL(?, 'SECOND')";
+                break;
+            case "Microsoft SQL Server":
+                expiresAt = "DATEADD(second, ?, SYSDATETIMEOFFSET())";
+                break;
+            default:
+                expiresAt = "DATEADD(SECOND, ?, CURRENT_TIMESTAMP)";
+                break;
+        }
+        boolean oracleId = highThroughputSchema && "Oracle".equals(productName);
+        String columns = (oracleId ? "id," : "") + "ptype,v0,v1,v2,v3,v4,v5,expires_at";
+        if (!uniquePolicies) {
+            return renderActualSql("INSERT INTO casbin_rule (" + columns + ") VALUES(" + (oracleId ? "casbin_sequence.nextval," : "") + "?,?,?,?,?,?,?," + expiresAt + ")");
+        }
+
+        String matches = "t.ptype = s.ptype";
+        for (int i = 0; i <= 5; i++) {
+            matches += String.format(" AND (t.v%d = s.v%d OR (t.v%d IS NULL AND s.v%d IS NULL))", i, i, i, i);
+        }
+        // The parameters are cast, as some databases can't type the columns of the derived table otherwise.
+        String param = "MySQL".equals(productName) ? "CAST(? AS CHAR(100))" : "CAST(? AS VARCHAR(100))";
+        String values = param + " AS ptype";
+        for (int i = 0; i <= 5; i++) {
+            values += ", " + param + " AS v" + i;
+        }
+        return renderActualSql("INSERT INTO casbin_rule (" + columns + ") SELECT " + (oracleId ? "casbin_sequence.nextval, " : "") +
+                "s.ptype, s.v0, s.v1, s.v2, s.v3, s.v4, s.v5, s.expires_at" +
+                " FROM (SELECT " + values + ", " + expiresAt + " AS expires_at" + ("Oracle".equals(productName) ? " FROM dual" : "") + ") s" +
+                " WHERE NOT EXISTS (SELECT 1 FROM casbin_rule t WHERE " + matches + ")");
+    }
+
+    /**
+     * addPolicies adds the rules read from an iterator, without holding them all in memory. The rules are
+     * written in chunks, each chunk being committed before the next one is read. If a chunk fails, the
+     * previous chunks stay committed, and the last progress reported tells how many rules were written.
+     *
+     * @param sec       the section, "p" or "g".
+     * @param ptype     the policy type, like "p" or "g".
+     * @param rules     the rules.
+     * @param chunkSize the number of rules committed together.
+     * @param progress  the listener called after every committed chunk, or null.
+     * @return the final progress, with the number of rules written and the throughput.
+     */
+    public PolicyImportProgress addPolicies(String sec, String ptype, Iterator<List<String>> rules, int chunkSize, Consumer<PolicyImportProgress> progress) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("Invalid chunk size: " + chunkSize);
+        }
+        long start = System.nanoTime();
+        long rows = 0;
+        long chunks = 0;
+        List<List<String>> chunk = new ArrayList<>(Math.min(chunkSize, batchSize * 10));
+        while (rules.hasNext()) {
+            chunk.clear();
+            while (chunk.size() < chunkSize && rules.hasNext()) {
+                chunk.add(rules.next());
+            }
+            addPolicies(sec, ptype, chunk);
+            rows += chunk.size();
+            chunks++;
+            if (progress != null) {
+                progress.accept(new PolicyImportProgress(rows, chunks, Duration.ofNanos(System.nanoTime() - start)));
+            }
+        }
+        return new PolicyImportProgress(rows, chunks, Duration.ofNanos(System.nanoTime() - start));
+    }
+
+    /**
+     * addPolicies adds the rules of a stream in committed chunks, like addPolicies from an iterator.
+     */
+    public PolicyImportProgress addPolicies(String sec, String ptype, Stream<List<String>> rules, int chunkSize, Consumer<PolicyImportProgress> progress) {
+        return addPolicies(sec, ptype, rules.iterator(), chunkSize, progress);
+    }
+
+    /**
+     * removePolicy removes a policy rule from the storage.
+     */
+    @Override
+    public void removePolicy(String sec, String ptype, List<String> rule) {
+        if (CollectionUtils.isEmpty(rule)) {
+            return;
+        }
+
+        execute(PolicyOperation.REMOVE_POLICY, ptype, () -> {
+            String sql = renderActualSql("DELETE FROM casbin_rule WHERE ptype = ?") + ruleCondition(rule);
+            try (PreparedStatement ps = prepareStatement(PolicyOperation.REMOVE_POLICY, sql)) {
+                ps.setString(1, ptype);
+                for (int j = 0; j < rule.size(); j++) {
+                    ps.setString(j + 2, rule.get(j));
+                }
+                int rows = executeUpdate(ps);
+                if (rows < 1 && removePolicyFailed) {
+                    throw new CasbinAdapterException(String.format("Remove policy error, remove %d rows, expect least 1 rows", rows));
+                }
+            }
+        });
+    }
+
+    @Override
+    public void removePolicies(String sec, String ptype, List<List<String>> rules) {
+        if (CollectionUtils.isEmpty(rules)) {
+            return;
+        }
+
+        execute(PolicyOperation.REMOVE_POLICY, ptype, () -> transactional(() -> {
+            for (List<String> rule : rules) {
+                removePolicy(sec, ptype, rule);
+            }
+        }));
+    }
+
+    /**
+     * removeFilteredPolicy removes policy rules that match the filter from the storage.
+     */
+    @Override
+    public void removeFilteredPolicy(String sec, String ptype, int fieldIndex, String... fieldValues) {
+        List<String> values = Optional.of(Arrays.asList(fieldValues)).orElse(new ArrayList<>());
+        if (CollectionUtils.isEmpty(values)) {
+            return;
+        }
+
+        execute(PolicyOperation.REMOVE_FILTERED_POLICY, ptype, () -> {
+            String sql = renderActualSql("DELETE FROM casbin_rule WHERE ptype = ?") + filterCondition(fieldIndex, values);
+            try (PreparedStatement ps = prepareStatement(PolicyOperation.REMOVE_FILTERED_POLICY, sql)) {
+                ps.setString(1, ptype);
+                int index = 2;
+                for (String value : values) {
+                    if (Objects.equals(value, "")) continue;
+                    ps.setString(index++, value);
+                }
+                int rows = executeUpdate(ps);
+                if (rows < 1 && removePolicyFailed) {
+                    throw new CasbinAdapterException(String.format("Remove filtered policy error, remove %d rows, expect least 1 rows", rows));
+                }
+            }
+        });
+    }
+
+    /**
+     * removeFilteredPolicies removes the rules matching each of the filters from the storage in one transaction.
+     * The filters are run in order, and consecutive filters with the same statement, like the filters of several
+     * ptypes on the same field, are sent in one batch. A rule matching several filters is counted by the first one.
+     *
+     * @return the number of rules removed by each filter, Statement.SUCCESS_NO_INFO if the driver doesn't report it.
+     */
+    public int[] removeFilteredPolicies(List<PolicyFilter> filters) {
+        int[] counts = new int[filters.size()];
+        if (filters.isEmpty()) {
+            return counts;
+        }
+
+        execute(PolicyOperation.REMOVE_FILTERED_POLICY, () -> transactional(() -> {
+            Arrays.fill(counts, 0);
+            int from = 0;
+            while (from < filters.size()) {
+                String sql = removeFilterSql(filters.get(from));
+                int to = from + 1;
+                while (to < filters.size() && Objects.equals(sql, removeFilterSql(filters.get(to)))) {
+                    to++;
+                }
+                if (sql != null) {
+                    List<Integer> batch = new ArrayList<>();
+                    try (PreparedStatement ps = prepareStatement(PolicyOperation.REMOVE_FILTERED_POLICY, sql)) {
+                        for (int i = from; i < to; i++) {
+                            if (bindRemoveFilter(ps, filters.get(i))) {
+                                ps.addBatch();
+                                batch.add(i);
+                            }
+                        }
+                        if (!batch.isEmpty()) {
+                            int[] rows = executeBatch(ps);
+                            for (int i = 0; i < rows.length; i++) {
+                                counts[batch.get(i)] = rows[i];
+                            }
+                        }
+                    }
+                }
+                from = to;
+            }
+            if (removePolicyFailed) {
+                for (int i = 0; i < counts.length; i++) {
+                    // A filter without values is skipped, like removeFilteredPolicy does.
+                    if (counts[i] == 0 && !filters.get(i).getFieldValues().isEmpty()) {
+                        throw new CasbinAdapterException(String.format("Remove filtered policy error, remove 0 rows for %s, expect least 1 rows", filters.get(i)));
+                    }
+                }
+            }
+        }));
+        return counts;
+    }
+
+    /**
+     * removeFilterSql returns the statement removing the rules matching the filter, or null if it matches nothing.
+     */
+    protected String removeFilterSql(PolicyFilter filter) {
+        if (filter.getFieldValues().isEmpty()) {
+            return null;
+        }
+        return renderTableSql("DELETE FROM casbin_rule WHERE ptype = ?", tableFor(filter.getPtype()))
+                + filterCondition(filter.getFieldIndex(), filter.getFieldValues());
+    }
+
+    /**
+     * bindRemoveFilter sets the parameters of the statement of removeFilterSql for the filter.
+     *
+     * @return false if no stored rule can match the filter, so it is left out of the batch.
+     */
+    protected boolean bindRemoveFilter(PreparedStatement ps, PolicyFilter filter) throws SQLException {
+        setFilterParameters(ps, filter.getPtype(), filter.getFieldValues());
+        return true;
+    }
+
+    /**
+     * copyPolicies copies the rules of the ptype whose field is fromValue to new rules whose field is toValue,
+     * like the rules of a template domain to a new domain, with one INSERT ... SELECT run by the database.
+     * With setUniquePolicies, the rules that already exist are skipped.
+     *
+     * @param fieldIndex the index of the field, 0 for v0.
+     * @return the number of rules added.
+     */
+    public long copyPolicies(String ptype, int fieldIndex, String fromValue, String toValue) {
+        if (fieldIndex < 0 || fieldIndex > 5) {
+            throw new IllegalArgumentException("Invalid field index: " + fieldIndex);
+        }
+        long[] rows = new long[1];
+        execute(PolicyOperation.ADD_POLICY, ptype, () -> {
+            String id = highThroughputSchema && "Oracle".equals(getDatabaseProductName()) ? "casbin_sequence.nextval" : null;
+            String sql = copySql("casbin_rule", id, fieldIndex);
+            if (uniquePolicies) {
+                sql += " AND NOT EXISTS (SELECT 1 FROM casbin_rule t WHERE t.ptype = s.ptype";
+                for (int i = 0; i <= 5; i++) {
+                    sql += i == fieldIndex
+                            ? String.format(" AND t.v%d = ?", i)
+                            : String.format(" AND (t.v%d = s.v%d OR (t.v%d IS NULL AND s.v%d IS NULL))", i, i, i, i);
+                }
+                sql += ")";
+            }
+            try (PreparedStatement ps = prepareStatement(PolicyOperation.ADD_POLICY, renderActualSql(sql))) {
+                ps.setString(1, toValue);
+                ps.setString(2, ptype);
+                ps.setString(3, fromValue);
+                if (uniquePolicies) {
+                    ps.setString(4, toValue);
+                }
+                rows[0] = executeUpdate(ps);
+            }
+            recordRows(rows[0]);
+        });
+        return rows[0];
+    }
+
+    /**
+     * copySql returns the INSERT ... SELECT copying the rows of the table matching "ptype = ? AND vN = ?"
+     * with the field vN replaced by the first parameter. The selected rows are aliased s.
+     * With policy expiry, the copies keep the expiry of their rule and the expired rules are not copied.
+     *
+     * @param id the expression of the id column, or null if the database generates it.
+     */
+    protected String copySql(String table, String id, int fieldIndex) throws SQLException {
+        String columns = "ptype,v0,v1,v2,v3,v4,v5";
+        String select = "s.ptype";
+        for (int i = 0; i <= 5; i++) {
+            select += i == fieldIndex ? ", ?" : ", s.v" + i;
+        }
+        if (id != null) {
+            columns = "id," + columns;
+            select = id + ", " + select;
+        }
+        String expiry = expiryCondition("s.expires_at");
+        if (expiry != null) {
+            columns += ",expires_at";
+            select += ", s.expires_at";
+        }
+        return "INSERT INTO " + table + " (" + columns + ") SELECT " + select + " FROM " + table + " s WHERE s.ptype = ? AND s.v" + fieldIndex + " = ?" +
+                (expiry == null ? "" : " AND " + expiry);
+    }
+
+    /**
+     * removeFilteredPolicyReturnsEffects removes policy rules that match the filter from the storage,
+     * like removeFilteredPolicy, and returns the removed rules, so that the other nodes can remove exactly
+     * them from their models instead of reloading the policy.
+     * The rows are deleted and returned by one statement on PostgreSQL (RETURNING) and SQL Server (OUTPUT),
+     * and are selected with a lock then deleted by id in one transaction on the other databases.
+     *
+     * @return the removed rules, without their ptype.
+     */
+    public List<List<String>> removeFilteredPolicyReturnsEffects(String sec, String ptype, int fieldIndex, String... fieldValues) {
+        List<List<String>> removed = new ArrayList<>();
+        if (fieldValues == null || fieldValues.length == 0) {
+            return removed;
+        }
+        List<String> values = Arrays.asList(fieldValues);
+
+        execute(PolicyOperation.REMOVE_FILTERED_POLICY, ptype, () -> {
+            removed.clear();
+            List<String> params = new ArrayList<>();
+            params.add(ptype);
+            for (String value : values) {
+                if (!Objects.equals(value, "")) {
+                    params.add(value);
+                }
+            }
+            String condition = " WHERE ptype = ?" + filterCondition(fieldIndex, values);
+            String returningSql = null;
+            switch (getDatabaseProductName()) {
+                case "PostgreSQL":
+                    returningSql = "DELETE FROM casbin_rule" + condition + " RETURNING ptype, v0, v1, v2, v3, v4, v5";
+                    break;
+                case "Microsoft SQL Server":
+                    returningSql = "DELETE FROM casbin_rule OUTPUT DELETED.ptype, DELETED.v0, DELETED.v1, DELETED.v2, DELETED.v3, DELETED.v4, DELETED.v5" + condition;
+                    break;
+            }
+
+            if (returningSql != null) {
+                try (PreparedStatement ps = prepareStatement(PolicyOperation.REMOVE_FILTERED_POLICY, renderActualSql(returningSql))) {
+                    for (int i = 0; i < params.size(); i++) {
+                        ps.setString(i + 1, params.get(i));
+                    }
+                    try (ResultSet rSet = ps.executeQuery()) {
+                        while (rSet.next()) {
+                            removed.add(toRule(readLine(rSet, 1)));
+                        }
+                    }
+                }
+            } else {
+                transactional(() -> deleteSelectedRules(PolicyOperation.REMOVE_FILTERED_POLICY,
+                        renderActualSql("SELECT id, ptype, v0, v1, v2, v3, v4, v5 FROM casbin_rule" + condition + " FOR UPDATE"), params,
+                        renderActualSql("DELETE FROM casbin_rule WHERE id = ?"), removed));
+            }
+            recordRows(removed.size());
+            if (removed.isEmpty() && removePolicyFailed) {
+                throw new CasbinAdapterException("Remove filtered policy error, remove 0 rows, expect least 1 rows");
+            }
+        });
+        return removed;
+    }
+
+    /**
+     * deleteSelectedRules reads the rules selected by the query, starting with the id, then deletes them by id
+     * with the delete statement. It must run in a transaction, the query locking the rows if possible.
+     */
+    protected void deleteSelectedRules(PolicyOperation operation, String selectSql, List<String> params, String deleteSql, List<List<String>> removed) throws SQLException {
+        List<Long> ids = new ArrayList<>();
+        try (PreparedStatement ps = prepareStatement(operation, selectSql)) {
+            for (int i = 0; i < params.size(); i++) {
+                ps.setString(i + 1, params.get(i));
+            }
+            try (ResultSet rSet = ps.executeQuery()) {
+                while (rSet.next()) {
+                    ids.add(rSet.getLong(1));
+                    removed.add(toRule(readLine(rSet, 2)));
+                }
+            }
+        }
+        if (ids.isEmpty()) {
+            return;
+        }
+        try (PreparedStatement ps = prepareStatement(operation, deleteSql)) {
+            for (int i = 0; i < ids.size(); i++) {
+                ps.setLong(1, ids.get(i));
+                ps.addBatch();
+                if ((i + 1) % batchSize == 0 || i == ids.size() - 1) {
+                    executeBatch(ps);
+                }
+            }
+        }
+    }
+
+    /**
+     * toRule returns the fields of the line as a policy rule, skipping the empty ones like loadPolicy does.
+     */
+    protected List<String> toRule(CasbinRule line) {
+        List<String> rule = new ArrayList<>();
+        for (String value : new String[]{line.v0, line.v1, line.v2, line.v3, line.v4, line.v5}) {
+            if (!value.isEmpty()) {
+                rule.add(value);
+            }
+        }
+        return rule;
+    }
+
+    /**
+     * ruleCondition returns the condition matching exactly the rule after "ptype = ?",
+     * with one parameter per field of the rule.
+     */
+    protected String ruleCondition(List<String> rule) {
+        String sql = "";
+        int columnIndex = 0;
+        for (int i = 0; i < rule.size(); i++) {
+            sql = String.format("%s%s%s%s", sql, " AND v", columnIndex, " = ?");
+            columnIndex++;
+        }
+        while (columnIndex <= 5) {
+            if (uniquePolicies) {
+                sql = String.format("%s%s%s%s%s%s", sql, " AND (v", columnIndex, " IS NULL OR v", columnIndex, " = '')");
+            } else {
+                sql = String.format("%s%s%s%s", sql, " AND v", columnIndex, " IS NULL");
+            }
+            columnIndex++;
+        }
+        return sql;
+    }
+
+    /**
+     * filterCondition returns the condition matching the field values after "ptype = ?",
+     * with one parameter per non-empty value. Empty values match any value.
+     */
+    protected String filterCondition(int fieldIndex, List<String> values) {
+        String sql = "";
+        int columnIndex = fieldIndex;
+        for (int i = 0; i < values.size(); i++, columnIndex++) {
+            if (Objects.equals(values.get(i), "")) continue;
+            sql = String.format("%s%s%s%s", sql, " AND v", columnIndex, " = ?");
+        }
+        return sql;
+    }
+
+    /**
+     * setFilterParameters sets the ptype and the values of filterCondition, from the first parameter.
+     */
+    protected void setFilterParameters(PreparedStatement ps, String ptype, List<String> values) throws SQLException {
+        ps.setString(1, ptype);
+        int index = 2;
+        for (String value : values) {
+            if (Objects.equals(value, "")) continue;
+            ps.setString(index++, value);
+        }
+    }
+
+    /**
+     * updatePolicy updates a policy rule from the current policy.
+     */
+    @Override
+    public void updatePolicy(String sec, String ptype, List<String> oldRule, List<String> newRule) {
+        if (CollectionUtils.isEmpty(oldRule) || CollectionUtils.isEmpty(newRule)) {
+            return;
+        }
+
+        execute(PolicyOperation.UPDATE_POLICY, ptype, () -> transactional(() -> {
+            try (PreparedStatement ps = prepareStatement(PolicyOperation.UPDATE_POLICY, insertSql())) {
+                removePolicy(sec, ptype, oldRule);
+                CasbinRule line = this.savePolicyLine(ptype, newRule);
+
+                setRuleParameters(ps, line);
+                executeUpdate(ps);
+            }
+        }));
+    }
+
+    /**
+     * insertSql returns the statement inserting one rule, with the parameters ptype, v0..v5.
+     * When uniquePolicies is enabled, it skips rules that already exist using the upsert of the database.
+     */
+    protected String insertSql() throws SQLException {
+        String sql = "INSERT INTO casbin_rule (ptype,v0,v1,v2,v3,v4,v5) VALUES(?,?,?,?,?,?,?)";
+        if (!uniquePolicies) {
+            if (highThroughputSchema && "Oracle".equals(getDatabaseProductName())) {
+                // Without the trigger, the id is taken from the cached sequence in the statement.
+                sql = "INSERT INTO casbin_rule (id,ptype,v0,v1,v2,v3,v4,v5) VALUES(casbin_sequence.nextval,?,?,?,?,?,?,?)";
+            }
+            return renderActualSql(sql);
+        }
+
+        String matches = "t.ptype = s.ptype";
+        for (int i = 0; i <= 5; i++) {
+            matches += String.format(" AND (t.v%d = s.v%d OR (t.v%d IS NULL AND s.v%d IS NULL))", i, i, i, i);
+        }
+        switch (getDatabaseProductName()) {
+            case "MySQL":
+                sql += " ON DUPLICATE KEY UPDATE id = id";
+                break;
+            case "PostgreSQL":
+                sql += " ON CONFLICT DO NOTHING";
+                break;
+            case "Oracle":
+                sql = "MERGE INTO casbin_rule t USING (SELECT ? ptype, ? v0, ? v1, ? v2, ? v3, ? v4, ? v5 FROM dual) s ON (" + matches + ") " +
+                        (highThroughputSchema
+                                ? "WHEN NOT MATCHED THEN INSERT (id,ptype,v0,v1,v2,v3,v4,v5) VALUES (casbin_sequence.nextval,s.ptype,s.v0,s.v1,s.v2,s.v3,s.v4,s.v5)"
+                                : "WHEN NOT MATCHED THEN INSERT (ptype,v0,v1,v2,v3,v4,v5) VALUES (s.ptype,s.v0,s.v1,s.v2,s.v3,s.v4,s.v5)");
+                break;
+            case "Microsoft SQL Server":
+                sql = "MERGE casbin_rule WITH (HOLDLOCK) AS t USING (SELECT ? AS ptype, ? AS v0, ? AS v1, ? AS v2, ? AS v3, ? AS v4, ? AS v5) AS s ON " + matches + " " +
+                        "WHEN NOT MATCHED THEN INSERT (ptype,v0,v1,v2,v3,v4,v5) VALUES (s.ptype,s.v0,s.v1,s.v2,s.v3,s.v4,s.v5);";
+                break;
+            default:
+                sql = "MERGE INTO casbin_rule (ptype,v0,v1,v2,v3,v4,v5) KEY (ptype,v0,v1,v2,v3,v4,v5) VALUES(?,?,?,?,?,?,?)";
+                break;
+        }
+        return renderActualSql(sql);
+    }
+
+    /**
+     * setRuleParameters binds ptype, v0..v5 of the line to the first seven parameters.
+     * When uniquePolicies is enabled, the missing fields are stored as empty strings,
+     * because NULLs are never equal in most unique keys.
+     */
+    protected void setRuleParameters(PreparedStatement ps, CasbinRule line) throws SQLException {
+        String[] fields = line.toStringArray();
+        for (int i = 0; i < fields.length; i++) {
+            ps.setString(i + 1, fields[i] == null && uniquePolicies ? "" : fields[i]);
+        }
+    }
+
+    /**
+     * setUniquePolicies sets whether the table has a unique key over (ptype, v0..v5).
+     * When enabled, migrate() creates the key and rules are inserted idempotently,
+     * so adding an existing rule is a no-op instead of a duplicate row.
+     * It is a schema option, see migrate().
+     */
+    public void setUniquePolicies(boolean uniquePolicies) {
+        this.uniquePolicies = uniquePolicies;
+    }
+
+    /**
+     * deduplicatePolicies removes the duplicate rows of the table, keeping the oldest of each rule.
+     * Missing fields stored as NULL or as empty string are considered equal. The values are compared
+     * case-sensitively, like Casbin does, whatever the collation of the columns.
+     * It should be run once before enabling the unique key on an existing table.
+     *
+     * @return the number of removed rows.
+     */
+    public int deduplicatePolicies() {
+        int[] removed = new int[1];
+        execute(PolicyOperation.REMOVE_FILTERED_POLICY, () -> transactional(() -> {
+            String columns = binaryForm("ptype");
+            for (int i = 0; i <= 5; i++) {
+                columns += ", " + binaryForm(String.format("COALESCE(v%d, '')", i));
+            }
+            try (Statement stmt = createStatement(PolicyOperation.REMOVE_FILTERED_POLICY)) {
+                for (String table : ruleTables()) {
+                    removed[0] += stmt.executeUpdate(renderTableSql("DELETE FROM casbin_rule WHERE id NOT IN " +
+                            "(SELECT id FROM (SELECT MIN(id) AS id FROM casbin_rule GROUP BY " + columns + ") keep)", table));
+                    if (uniquePolicies && !"Oracle".equals(getDatabaseProductName())) {
+                        for (int i = 0; i <= 5; i++) {
+                            stmt.executeUpdate(renderTableSql(String.format("UPDATE casbin_rule SET v%d = '' WHERE v%d IS NULL", i, i), table));
+                        }
+                    }
+                }
+            }
+        }));
+        return removed[0];
+    }
+
+    /**
+     * binaryForm returns the expression comparing the value byte by byte, on the databases whose default
+     * collations ignore the case.
+     */
+    private String binaryForm(String value) throws SQLException {
+        switch (getDatabaseProductName()) {
+            case "MySQL":
+                return "CAST(" + value + " AS BINARY)";
+            case "Microsoft SQL Server":
+                return value + " COLLATE Latin1_General_BIN2";
+            default:
+                return value;
+        }
+    }
+
+    /**
+     * exportPolicies writes all policy rules to the stream in the compact binary format of PolicyDump,
+     * reading the table in keyset pages without loading a model. A retried export resumes after the last
+     * written page. Rules changed by other connections during the export may or may not be included.
+     * The dump doesn't carry the expiry of the rules: with setPolicyExpiry, the expired rules are skipped
+     * and the others are exported like the permanent ones. The stream is flushed but not closed.
+     *
+     * @return the number of exported rules.
+     */
+    public long exportPolicies(OutputStream out) {
+        PolicyDump.Writer writer;
+        try {
+            writer = new PolicyDump.Writer(out, batchSize);
+        } catch (IOException e) {
+            throw new CasbinAdapterException("Failed to export the policies.", e);
+        }
+        List<String> tables = ruleTables();
+        int[] table = {0};
+        long[] lastId = {Long.MIN_VALUE};
+        execute(PolicyOperation.LOAD_POLICY, () -> {
+            for (; table[0] < tables.size(); table[0]++, lastId[0] = Long.MIN_VALUE) {
+                exportTable(renderTableSql(pageSql(""), tables.get(table[0])), writer, lastId);
+            }
+        });
+        try {
+            writer.finish();
+        } catch (IOException e) {
+            throw new CasbinAdapterException("Failed to export the policies.", e);
+        }
+        return writer.getTotal();
+    }
+
+    /**
+     * exportTable writes the rules of a table read in pages after lastId, updated after every written page.
+     */
+    private void exportTable(String sql, PolicyDump.Writer writer, long[] lastId) throws SQLException {
+        List<CasbinRule> page = new ArrayList<>(batchSize);
+        do {
+            page.clear();
+            long pageLastId = lastId[0];
+            try (PreparedStatement ps = prepareStatement(PolicyOperation.LOAD_POLICY, sql)) {
+                ps.setLong(1, pageLastId);
+                ps.setInt(2, batchSize);
+                try (ResultSet rSet = ps.executeQuery()) {
+                    while (rSet.next()) {
+                        pageLastId = rSet.getLong(1);
+                        CasbinRule line = new CasbinRule();
+                        line.ptype = rSet.getString(2);
+                        line.v0 = rSet.getString(3);
+                        line.v1 = rSet.getString(4);
+                        line.v2 = rSet.getString(5);
+                        line.v3 = rSet.getString(6);
+                        line.v4 = rSet.getString(7);
+                        line.v5 = rSet.getString(8);
+                        page.add(line);
+                    }
+                }
+            }
+            recordRows(page.size());
+            try {
+                for (CasbinRule line : page) {
+                    writer.write(line);
+                }
+            } catch (IOException e) {
+                throw new CasbinAdapterException("Failed to export the policies.", e);
+            }
+            lastId[0] = pageLastId;
+        } while (page.size() == batchSize);
+    }
+
+    /**
+     * importPolicies replaces all policy rules with the ones of a stream written by exportPolicies,
+     * in one transaction. Each block is checked against its checksum before being inserted with the bulk path
+     * of the database, see insertRules, and a corrupted dump rolls the whole import back. The dump has no expiry,
+     * so like savePolicy, the imported rules which are still stored with an unexpired expiry keep it, and the
+     * others are permanent, see replaceAllRules. The stream is not closed.
+     *
+     * @return the number of imported rules.
+     */
+    public long importPolicies(InputStream in) {
+        PolicyDump.Reader reader = new PolicyDump.Reader(in);
+        long[] count = new long[1];
+        execute(PolicyOperation.SAVE_POLICY, () -> transactional(() -> {
+            if (reader.isStarted()) {
+                throw new CasbinAdapterException("Failed to import the policies, the stream cannot be read again after a connection failure.");
+            }
+            Map<List<String>, Deque<Long>> kept = deleteRulesKeepingExpiry();
+            try {
+                List<CasbinRule> lines;
+                while ((lines = reader.nextBlock()) != null) {
+                    insertRules(PolicyOperation.SAVE_POLICY, withoutKeptRules(lines, kept));
+                    count[0] += lines.size();
+                }
+            } catch (IOException e) {
+                throw new CasbinAdapterException("Failed to import the policies.", e);
+            }
+            deleteUnmatchedRules(kept);
+        }));
+        return count[0];
+    }
+
+    /**
+     * deleteAllRules deletes every policy rule of the storage.
+     */
+    protected void deleteAllRules(Statement stmt) throws SQLException {
+        for (String table : ruleTables()) {
+            stmt.execute(renderTableSql("delete from casbin_rule", table));
+        }
+    }
+
+    /**
+     * replaceAllRules replaces every policy rule of the storage with the lines, in the open transaction.
+     * With setPolicyExpiry, a line matching an unexpired rule with an expiry keeps the stored row and its expiry,
+     * instead of being inserted again as a permanent rule. Each stored row matches one line at most.
+     */
+    protected void replaceAllRules(PolicyOperation operation, List<CasbinRule> lines) throws SQLException {
+        Map<List<String>, Deque<Long>> kept = deleteRulesKeepingExpiry();
+        insertRules(operation, withoutKeptRules(lines, kept));
+        deleteUnmatchedRules(kept);
+    }
+
+    /**
+     * deleteRulesKeepingExpiry deletes the rules of the storage, except the unexpired ones with an expiry,
+     * whose ids it returns by rule, see ruleKey. Without policy expiry, it deletes every rule.
+     */
+    private Map<List<String>, Deque<Long>> deleteRulesKeepingExpiry() throws SQLException {
+        Map<List<String>, Deque<Long>> kept = new HashMap<>();
+        try (Statement stmt = createStatement(PolicyOperation.SAVE_POLICY)) {
+            if (!policyExpiry) {
+                deleteAllRules(stmt);
+                return kept;
+            }
+            for (String table : ruleTables()) {
+                try (ResultSet rSet = stmt.executeQuery(renderTableSql("SELECT id,ptype,v0,v1,v2,v3,v4,v5 FROM casbin_rule WHERE expires_at IS NOT NULL AND " + expiryCondition(), table))) {
+                    while (rSet.next()) {
+                        kept.computeIfAbsent(ruleKey(readLine(rSet, 2)), k -> new ArrayDeque<>()).add(rSet.getLong(1));
+                    }
+                }
+                stmt.executeUpdate(renderTableSql("DELETE FROM casbin_rule WHERE expires_at IS NULL OR expires_at <= " + nowSql(getDatabaseProductName()), table));
+            }
+        }
+        return kept;
+    }
+
+    /**
+     * withoutKeptRules returns the lines without the ones matching a kept rule, whose id it removes from kept.
+     */
+    private static List<CasbinRule> withoutKeptRules(List<CasbinRule> lines, Map<List<String>, Deque<Long>> kept) {
+        if (kept.isEmpty()) {
+            return lines;
+        }
+        List<CasbinRule> rest = new ArrayList<>(lines.size());
+        for (CasbinRule line : lines) {
+            Deque<Long> ids = kept.get(ruleKey(line));
+            if (ids == null || ids.poll() == null) {
+                rest.add(line);
+            }
+        }
+        return rest;
+    }
+
+    /**
+     * deleteUnmatchedRules deletes the kept rules which matched no saved line.
+     */
+    private void deleteUnmatchedRules(Map<List<String>, Deque<Long>> kept) throws SQLException {
+        for (Map.Entry<List<String>, Deque<Long>> entry : kept.entrySet()) {
+            if (entry.getValue().isEmpty()) {
+                continue;
+            }
+            String sql = renderTableSql("DELETE FROM casbin_rule WHERE id = ?", tableFor(entry.getKey().get(0)));
+            try (PreparedStatement ps = prepareStatement(PolicyOperation.SAVE_POLICY, sql)) {
+                for (Long id : entry.getValue()) {
+                    ps.setLong(1, id);
+                    ps.addBatch();
+                }
+                executeBatch(ps);
+            }
+        }
+    }
+
+    /**
+     * ruleKey returns ptype, v0..v5 of the line, with the missing fields as "", like loadPolicy reads them.
+     */
+    private static List<String> ruleKey(CasbinRule line) {
+        String[] fields = line.toStringArray();
+        for (int i = 0; i < fields.length; i++) {
+            if (fields[i] == null) {
+                fields[i] = "";
+            }
+        }
+        return Arrays.asList(fields);
+    }
+
+    /**
+     * insertRules inserts the lines with the bulk path of the database: COPY on PostgreSQL, multi-row INSERTs
+     * on MySQL, SQL Server and PostgreSQL without its JDBC driver, and batched inserts on Oracle and H2.
+     * With unique policies, the rules are upserted in batches instead.
+     */
+    protected void insertRules(PolicyOperation operation, List<CasbinRule> lines) throws SQLException {
+        if (!hasPtypeTables()) {
+            insertTableRules(operation, lines);
+            return;
+        }
+        Map<String, List<CasbinRule>> tables = new LinkedHashMap<>();
+        for (CasbinRule line : lines) {
+            tables.computeIfAbsent(tableFor(line.ptype), k -> new ArrayList<>()).add(line);
+        }
+        String previous = routedTable.get();
+        try {
+            for (Map.Entry<String, List<CasbinRule>> table : tables.entrySet()) {
+                routedTable.set(table.getKey());
+                insertTableRules(operation, table.getValue());
+            }
+        } finally {
+            routedTable.set(previous);
+        }
+    }
+
+    private void insertTableRules(PolicyOperation operation, List<CasbinRule> lines) throws SQLException {
+        String productName = getDatabaseProductName();
+        if (!uniquePolicies && "PostgreSQL".equals(productName) && supportsCopy()) {
+            recordRows(PgCopy.copyIn(getConnection(), renderActualSql("COPY casbin_rule (ptype,v0,v1,v2,v3,v4,v5) FROM STDIN"), lines));
+            return;
+        }
+        int rowsPerInsert = multiRowLimit(productName);
+        if (!uniquePolicies && rowsPerInsert > 1 && lines.size() > 1) {
+            insertMultiRow(operation, lines, rowsPerInsert);
+            return;
+        }
+        try (PreparedStatement ps = prepareStatement(operation, insertSql())) {
+            int count = 0;
+            for (CasbinRule line : lines) {
+                setRuleParameters(ps, line);
+                ps.addBatch();
+                if (++count == batchSize) {
+                    count = 0;
+                    executeBatch(ps);
+                    ps.clearBatch();
+                }
+            }
+            if (count != 0) {
+                executeBatch(ps);
+            }
+        }
+    }
+
+    /**
+     * multiRowLimit returns the number of rules inserted by one multi-row INSERT, bounded by the batch size and
+     * by the parameters a statement takes on the database, or 1 where the rules are inserted in batches:
+     * Oracle has no multi-row VALUES, but its driver binds a batch as arrays, and H2 runs in process.
+     */
+    private int multiRowLimit(String productName) {
+        switch (productName) {
+            case "MySQL":
+                // Without rewriteBatchedStatements, which the adapter can't set on the DataSource, a batch
+                // is sent as one statement per rule.
+                return Math.min(batchSize, 65535 / 7);
+            case "PostgreSQL":
+                return Math.min(batchSize, 32767 / 7);
+            case "Microsoft SQL Server":
+                return Math.min(batchSize, 2099 / 7);
+            default:
+                return 1;
+        }
+    }
+
+    /**
+     * insertMultiRow inserts the lines with INSERT statements of rowsPerInsert rows each, the last one taking the rest.
+     */
+    private void insertMultiRow(PolicyOperation operation, List<CasbinRule> lines, int rowsPerInsert) throws SQLException {
+        int full = lines.size() / rowsPerInsert * rowsPerInsert;
+        if (full > 0) {
+            insertRows(operation, lines.subList(0, full), rowsPerInsert);
+        }
+        if (full < lines.size()) {
+            insertRows(operation, lines.subList(full, lines.size()), lines.size() - full);
+        }
+    }
+
+    private void insertRows(PolicyOperation operation, List<CasbinRule> lines, int rowsPerInsert) throws SQLException {
+        String sql = renderActualSql("INSERT INTO casbin_rule (ptype,v0,v1,v2,v3,v4,v5) VALUES ") +
+                String.join(",", Collections.nCopies(rowsPerInsert, "(?,?,?,?,?,?,?)"));
+        try (PreparedStatement ps = prepareStatement(operation, sql)) {
+            for (int from = 0; from < lines.size(); from += rowsPerInsert) {
+                int parameter = 1;
+                for (CasbinRule line : lines.subList(from, from + rowsPerInsert)) {
+                    for (String field : line.toStringArray()) {
+                        ps.setString(parameter++, field);
+                    }
+                }
+                executeUpdate(ps);
+            }
+        }
+    }
+
+    /**
+     * supportsCopy checks whether the connection is one of the PostgreSQL JDBC driver, whose copy API PgCopy uses.
+     * Without the driver on the classpath, or with another PostgreSQL driver, the rules are inserted with multi-row INSERTs.
+     */
+    private boolean supportsCopy() throws SQLException {
+        try {
+            return PgCopy.isAvailable(getConnection());
+        } catch (NoClassDefFoundError e) {
+            return false;
+        }
+    }
+
+    /**
+     * beginTransaction opens a transaction spanning the next calls of the adapter, until commitTransaction
+     * or rollbackTransaction. The changes are committed at once, and no other connection observes them half-applied.
+     * The operations of an open transaction are not retried on connection failures, since the work done
+     * before the failure would be lost with the connection.
+     * The transaction belongs to the adapter, not to a thread: while it is open, the adapter must only be
+     * used by the thread that opened it, since the calls of any other thread would join the transaction.
+     */
+    public void beginTransaction() throws SQLException {
+        if (transactionOpen) {
+            throw new IllegalStateException("A transaction is already open.");
+        }
+        getConnection().setAutoCommit(false);
+        transactionOpen = true;
+        transactionChanged = false;
+    }
+
+    /**
+     * commitTransaction commits the changes made since beginTransaction.
+     * The version of the policy is bumped in the transaction, so a failed bump leaves it open to be rolled back.
+     */
+    public void commitTransaction() throws SQLException {
+        if (!transactionOpen) {
+            throw new IllegalStateException("No transaction is open.");
+        }
+        Connection connection = getConnection();
+        Long own = null;
+        if (changeTracking && transactionChanged) {
+            own = incrementVersion(connection);
+        }
+        try {
+            connection.commit();
+        } catch (SQLException e) {
+            if (own != null) {
+                ownVersions.remove(own);
+            }
+            throw e;
+        }
+        endTransaction();
+    }
+
+    /**
+     * rollbackTransaction discards the changes made since beginTransaction.
+     */
+    public void rollbackTransaction() throws SQLException {
+        if (!transactionOpen) {
+            throw new IllegalStateException("No transaction is open.");
+        }
+        try {
+            rollbackConnection();
+        } finally {
+            endTransaction();
+        }
+    }
+
+    /**
+     * runInTransaction runs the calls of the adapter made by the body in one transaction,
+     * committed if the body completes and rolled back if it throws.
+     *
+     * <pre>
+     * adapter.runInTransaction(() -&gt; {
+     *     adapter.addPolicies("g", "g", roles);
+     *     adapter.removeFilteredPolicy("p", "p", 0, "default");
+     *     adapter.addPolicies("p", "p", policies);
+     * });
+     * </pre>
+     */
+    public void runInTransaction(Runnable body) {
+        try {
+            beginTransaction();
+        } catch (SQLException e) {
+            throw new CasbinAdapterException("Failed to begin the transaction.", e);
+        }
+        try {
+            body.run();
+        } catch (RuntimeException | Error e) {
+            rollbackAfter(e);
+            throw e;
+        }
+        try {
+            commitTransaction();
+        } catch (SQLException e) {
+            if (!transactionOpen) {
+                // The changes are committed, only restoring the auto-commit mode failed.
+                throw new CasbinAdapterException("Failed to end the committed transaction.", e);
+            }
+            rollbackAfter(e);
+            throw new CasbinAdapterException("Failed to commit the transaction.", e);
+        }
+    }
+
+    /**
+     * rollbackAfter rolls back the transaction still open after the failure, keeping the failure as the cause.
+     */
+    private void rollbackAfter(Throwable failure) {
+        if (!transactionOpen) {
+            return;
+        }
+        try {
+            rollbackTransaction();
+        } catch (SQLException rollbackFailure) {
+            failure.addSuppressed(rollbackFailure);
+        }
+    }
+
+    /**
+     * isTransactionOpen returns whether a transaction opened by beginTransaction is in progress.
+     */
+    public boolean isTransactionOpen() {
+        return transactionOpen;
+    }
+
+    private void endTransaction() throws SQLException {
+        transactionOpen = false;
+        getConnection().setAutoCommit(true);
+    }
+
+    /**
+     * transactional runs the body of an operation in a transaction of its own,
+     * or as part of the transaction already open on the connection.
+     */
+    protected void transactional(CheckedRunnable body) throws Throwable {
+        if (!getConnection().getAutoCommit()) {
+            body.run();
+            return;
+        }
+        getConnection().setAutoCommit(false);
+        try {
+            body.run();
+            getConnection().commit();
+        } catch (Throwable e) {
+            rollbackConnection();
+            throw e;
+        } finally {
+            getConnection().setAutoCommit(true);
+        }
+    }
+
+    /**
+     * rollbackConnection rolls back the transaction of the connection.
+     */
+    protected void rollbackConnection() throws SQLException {
+        getConnection().rollback();
+    }
+
+    /**
+     * setShadowSave sets whether savePolicy writes the rules into a staging table swapped with the live one,
+     * instead of deleting and inserting the rules of the live table in one long transaction.
+     * Readers of other nodes then keep seeing the previous policy until the swap. Inside an open
+     * transaction, savePolicy always writes in place. JDBCDictionaryAdapter rejects it.
+     * <p>
+     * The swap replaces the live table by a new one, recreating only the objects of the adapter: the primary key,
+     * the unique key, the expiry column and the notify trigger. Grants, views, foreign keys, triggers and indexes
+     * added outside the adapter are lost or left on the dropped table, so the shadow mode is not safe for a table
+     * other objects depend on.
+     */
+    public void setShadowSave(boolean shadowSave) {
+        this.shadowSave = shadowSave;
+    }
+
+    /**
+     * setShadowSaveParallelism sets the number of connections filling the staging table in parallel.
+     *
+     * @param connections the number of connections taken from the DataSource, 1 uses the connection of the adapter.
+     */
+    public void setShadowSaveParallelism(int connections) {
+        this.shadowSaveParallelism = connections;
+    }
+
+    /**
+     * setHighThroughputSchema sets whether migrate() creates, or converts the existing table to, the layout
+     * tuned for batch inserts. On Oracle, the id is NUMBER(19, 0) instead of the default NUMBER(5, 0), and taken
+     * by the inserts from a sequence caching 1000 values, without the per-row trigger. Every application inserting
+     * into the table must then provide the id itself, so all the adapters of the table must enable it.
+     * On SQL Server, the id is a bigint.
+     * It is a schema option, see migrate().
+     * With the Microsoft JDBC driver, useBulkCopyForBatchInsert=true in the URL also sends batches with bulk copy.
+     */
+    public void setHighThroughputSchema(boolean highThroughputSchema) {
+        this.highThroughputSchema = highThroughputSchema;
+    }
+
+    /**
+     * setPolicyExpiry enables rules with an expiry: migrate() adds the nullable expires_at column,
+     * addPolicies with a ttl sets it, and the loads skip the expired rules.
+     * It is a schema option, see migrate().
+     */
+    public void setPolicyExpiry(boolean policyExpiry) {
+        this.policyExpiry = policyExpiry;
+    }
+
+    /**
+     * setPtypeTables stores the rules of the given ptypes each in its own table named after the table of the
+     * adapter and the ptype, e.g. casbin_rule_g for "g". The rules of the other ptypes stay in the table of the adapter.
+     * The changes of a ptype only touch its table, loadPolicy reads the tables concurrently (without the load page size),
+     * and the filtered loads only read the tables of the ptypes referenced by the filter.
+     * They are a schema option, see migrate().
+     * On Oracle, the tables require the high-throughput schema.
+     *
+     * @param ptypes the ptypes with their own table.
+     */
+    public void setPtypeTables(String... ptypes) {
+        for (String ptype : ptypes) {
+            if (!ptype.matches("[A-Za-z0-9_]+")) {
+                throw new IllegalArgumentException("Invalid ptype: " + ptype);
+            }
+        }
+        this.ptypeTables = ptypes.clone();
+    }
+
+    /**
+     * tableFor returns the table storing the rules of a ptype.
+     */
+    protected String tableFor(String ptype) {
+        for (String table : ptypeTables) {
+            if (table.equals(ptype)) {
+                return tableName + "_" + ptype;
+            }
+        }
+        return tableName;
+    }
+
+    /**
+     * ruleTables returns the tables storing the rules, the table of the adapter first.
+     */
+    protected List<String> ruleTables() {
+        List<String> tables = new ArrayList<>();
+        tables.add(tableName);
+        for (String ptype : ptypeTables) {
+            tables.add(tableName + "_" + ptype);
+        }
+        return tables;
+    }
+
+    protected boolean hasPtypeTables() {
+        return ptypeTables.length > 0;
+    }
+
+    /**
+     * pruneExpiredPolicies deletes the expired rules in chunks, each chunk being committed on its own,
+     * so the table is never locked for long. It uses its own connection from the DataSource,
+     * and can run on another thread than the other operations of the adapter.
+     *
+     * @param chunkSize the number of rules deleted per transaction.
+     * @return the number of rules deleted.
+     */
+    public long pruneExpiredPolicies(int chunkSize) throws SQLException {
+        if (!policyExpiry) {
+            throw new IllegalStateException("Policy expiry is not enabled, see setPolicyExpiry.");
+        }
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("Invalid chunk size: " + chunkSize);
+        }
+        long total = 0;
+        Connection connection = openConnection();
+        try {
+            connection.setAutoCommit(true);
+            String productName = connection.getMetaData().getDatabaseProductName();
+            String selectSql = limitSql("SELECT id FROM casbin_rule WHERE expires_at <= " + nowSql(productName) + " ORDER BY id", productName);
+            List<Long> ids = new ArrayList<>(chunkSize);
+            for (String table : ruleTables()) {
+                do {
+                    ids.clear();
+                    try (PreparedStatement ps = connection.prepareStatement(renderTableSql(selectSql, table))) {
+                        ps.setInt(1, chunkSize);
+                        try (ResultSet rSet = ps.executeQuery()) {
+                            while (rSet.next()) {
+                                ids.add(rSet.getLong(1));
+                            }
+                        }
+                    }
+                    if (ids.isEmpty()) {
+                        break;
+                    }
+                    String deleteSql = renderTableSql("DELETE FROM casbin_rule WHERE id IN (" + String.join(",", Collections.nCopies(ids.size(), "?")) + ")", table);
+                    try (PreparedStatement ps = connection.prepareStatement(deleteSql)) {
+                        for (int i = 0; i < ids.size(); i++) {
+                            ps.setLong(i + 1, ids.get(i));
+                        }
+                        total += ps.executeUpdate();
+                    }
+                } while (ids.size() == chunkSize);
+            }
+
+            if (total > 0 && changeTracking) {
+                bumpVersion(connection);
+            }
+        } finally {
+            closeConnection(connection);
+        }
+        return total;
+    }
+
+    /**
+     * startExpiryPruning runs pruneExpiredPolicies periodically on a background thread, until
+     * stopExpiryPruning or close is called. A failed run is recorded as a JFR event and retried at the next period.
+     *
+     * @param interval  the delay between the end of a run and the start of the next one.
+     * @param chunkSize the number of rules deleted per transaction.
+     */
+    public void startExpiryPruning(Duration interval, int chunkSize) {
+        startExpiryPruning(interval, chunkSize, e -> {
+        });
+    }
+
+    /**
+     * startExpiryPruning runs pruneExpiredPolicies periodically on a background thread, like
+     * startExpiryPruning(interval, chunkSize), passing the failure of a run to the handler, e.g. to log it.
+     *
+     * @param interval  the delay between the end of a run and the start of the next one.
+     * @param chunkSize the number of rules deleted per transaction.
+     * @param onFailure the handler of the failed runs, called on the pruning thread.
+     */
+    public synchronized void startExpiryPruning(Duration interval, int chunkSize, Consumer<Exception> onFailure) {
+        if (!policyExpiry) {
+            throw new IllegalStateException("Policy expiry is not enabled, see setPolicyExpiry.");
+        }
+        stopExpiryPruning();
+        pruner = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "jcasbin-jdbc-pruner");
+            thread.setDaemon(true);
+            return thread;
+        });
+        pruner.scheduleWithFixedDelay(() -> {
+            // A runtime exception escaping the task would cancel the next runs.
+            try {
+                pruneExpiredPolicies(chunkSize);
+            } catch (Exception e) {
+                AdapterEvents.failed("pruneExpiredPolicies", tableName, e);
+                try {
+                    onFailure.accept(e);
+                } catch (RuntimeException ignored) {
+                }
+            }
+        }, interval.toMillis(), interval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * stopExpiryPruning stops the background pruning started by startExpiryPruning.
+     */
+    public synchronized void stopExpiryPruning() {
+        if (pruner != null) {
+            pruner.shutdownNow();
+            pruner = null;
+        }
+    }
 
-            try (Statement statement = conn.createStatement(); PreparedStatement ps = conn.prepareStatement(addSql)) {
-                statement.execute(cleanSql);
-                count = saveSectionPolicyWithBatch(model, "p", ps, count);
-                count = saveSectionPolicyWithBatch(model, "g", ps, count);
+    /**
+     * setSchemaMarker enables the schema marker: migrate() records the options of the schema it created in the
+     * casbin_rule_schema table, and later migrations with the same options only read it instead of running the DDL.
+     * A schema changed outside of migrate() is not detected, so drop casbin_rule_schema after changing it by hand.
+     * It is a schema option, see migrate().
+     */
+    public void setSchemaMarker(boolean schemaMarker) {
+        this.schemaMarker = schemaMarker;
+    }
 
-                if (count != 0) {
-                    ps.executeBatch();
-                }
+    /**
+     * setPartitionByPtype sets migrate() to create the table of PostgreSQL partitioned by LIST (ptype), with one partition
+     * per ptype and a default partition for the others. The operations filtering on ptype, like removeFilteredPolicy
+     * or a JDBCFilter with ptypes, then only scan the partitions of their ptypes.
+     * It is a schema option (see migrate()) that only applies when the table is created:
+     * move an existing table with exportPolicies and importPolicies.
+     *
+     * @param ptypes the ptypes with their own partition, like "p" and "g".
+     */
+    public void setPartitionByPtype(String... ptypes) {
+        for (String ptype : ptypes) {
+            if (!ptype.matches("[A-Za-z0-9_]+")) {
+                throw new IllegalArgumentException("Invalid ptype for a partition: " + ptype);
+            }
+        }
+        this.partitionPtypes = ptypes.clone();
+        this.partitionField = -1;
+    }
 
-                conn.commit();
-            } catch (SQLException e) {
-                conn.rollback();
-                throw e;
-            } finally {
-                conn.setAutoCommit(true);
+    /**
+     * setPartitionByHash sets migrate() to create the table of PostgreSQL partitioned by HASH of a field, like the domain.
+     * The operations matching the field by value, like removeFilteredPolicy on the domain, then only scan one partition.
+     * It only applies when the table is created, like setPartitionByPtype.
+     *
+     * @param fieldIndex the index of the field, 0 for v0.
+     * @param partitions the number of partitions.
+     */
+    public void setPartitionByHash(int fieldIndex, int partitions) {
+        if (fieldIndex < 0 || fieldIndex > 5) {
+            throw new IllegalArgumentException("Invalid field index: " + fieldIndex);
+        }
+        if (partitions <= 0) {
+            throw new IllegalArgumentException("Invalid number of partitions: " + partitions);
+        }
+        this.partitionField = fieldIndex;
+        this.partitionCount = partitions;
+        this.partitionPtypes = null;
+    }
+
+    /**
+     * setChangeTracking sets whether every change made by the adapter bumps the version row of the
+     * casbin_rule_version table, which lets a JDBCWatcher detect changes made by other nodes.
+     * It is a schema option, see migrate().
+     */
+    public void setChangeTracking(boolean changeTracking) {
+        this.changeTracking = changeTracking;
+    }
+
+    /**
+     * getPolicyVersion returns the version of the policy, bumped by every change when change tracking is enabled.
+     */
+    public long getPolicyVersion() {
+        long[] version = new long[1];
+        execute(PolicyOperation.QUERY_POLICY, () -> {
+            try (Statement stmt = createStatement(PolicyOperation.QUERY_POLICY);
+                 ResultSet rSet = stmt.executeQuery(renderActualSql("SELECT version FROM casbin_rule_version WHERE id = 1"))) {
+                version[0] = rSet.next() ? rSet.getLong(1) : 0;
             }
         });
+        return version[0];
     }
 
     /**
-     * saveSectionPolicyWithBatch saves section policy rules to the storage.
-     * as a helper function for savePolicy
-     * only when the batchCount exceeds the batchSize will the actual save operation be performed
+     * bumpVersion increments the version of the policy on the connection, in auto-commit mode, notifying
+     * the watchers of other nodes, for the changes committed on their own: the pruning and the shadow swap.
+     * While a polling watcher is attached, the new version is recorded in ownVersions so that
+     * the watcher doesn't notify this node of its own change.
      */
-    private int saveSectionPolicyWithBatch(Model model, String section, PreparedStatement ps, int batchCount) throws SQLException {
-        if (!model.model.containsKey(section)) return batchCount;
-        for (Map.Entry<String, Assertion> entry : model.model.get(section).entrySet()) {
-            String ptype = entry.getKey();
-            Assertion ast = entry.getValue();
-
-            for (List<String> rule : ast.policy) {
-                CasbinRule line = savePolicyLine(ptype, rule);
+    private void bumpVersion(Connection connection) throws SQLException {
+        if (!recordOwnVersions) {
+            incrementVersion(connection);
+            return;
+        }
 
-                ps.setString(1, line.ptype);
-                ps.setString(2, line.v0);
-                ps.setString(3, line.v1);
-                ps.setString(4, line.v2);
-                ps.setString(5, line.v3);
-                ps.setString(6, line.v4);
-                ps.setString(7, line.v5);
+        Long own = null;
+        connection.setAutoCommit(false);
+        try {
+            own = incrementVersion(connection);
+            connection.commit();
+        } catch (SQLException e) {
+            if (own != null) {
+                ownVersions.remove(own);
+            }
+            try {
+                connection.rollback();
+            } catch (SQLException ignored) {
+            }
+            throw e;
+        } finally {
+            try {
+                connection.setAutoCommit(true);
+            } catch (SQLException ignored) {
+            }
+        }
+    }
 
-                ps.addBatch();
-                if (++batchCount == batchSize) {
-                    batchCount = 0;
-                    ps.executeBatch();
-                    ps.clearBatch();
+    /**
+     * incrementVersion increments the version row on the connection, without committing.
+     * While a polling watcher is attached, the row stays locked until the commit, so the version
+     * read back is the one written here, and it is recorded in ownVersions.
+     *
+     * @return the recorded version, or null if none was recorded.
+     */
+    private Long incrementVersion(Connection connection) throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            stmt.executeUpdate(renderActualSql("UPDATE casbin_rule_version SET version = version + 1 WHERE id = 1"));
+            if (!recordOwnVersions) {
+                return null;
+            }
+            try (ResultSet rSet = stmt.executeQuery(renderActualSql("SELECT version FROM casbin_rule_version WHERE id = 1"))) {
+                if (rSet.next()) {
+                    long own = rSet.getLong(1);
+                    ownVersions.add(own);
+                    return own;
                 }
             }
         }
-        return batchCount;
+        return null;
     }
 
     /**
-     * addPolicy adds a policy rule to the storage.
+     * getDatabaseProductName returns the product name of the database, like "MySQL".
      */
-    @Override
-    public void addPolicy(String sec, String ptype, List<String> rule) {
-        List<List<String>> rules = new ArrayList<>();
-        rules.add(rule);
-        this.addPolicies(sec, ptype, rules);
+    protected String getDatabaseProductName() throws SQLException {
+        if (productName == null) {
+            productName = getConnection().getMetaData().getDatabaseProductName();
+        }
+        return productName;
     }
 
-    @Override
-    public void addPolicies(String sec, String ptype, List<List<String>> rules) {
-        if (CollectionUtils.isEmpty(rules)) {
-            return;
+    /**
+     * Close the Connection.
+     */
+    public void close() throws SQLException {
+        stopExpiryPruning();
+        synchronized (this) {
+            if (loadExecutor != null) {
+                loadExecutor.shutdownNow();
+                loadExecutor = null;
+            }
+        }
+        if (conn != null) {
+            closeConnection(conn);
         }
+    }
 
-        String sql = renderActualSql("INSERT INTO casbin_rule (ptype,v0,v1,v2,v3,v4,v5) VALUES(?,?,?,?,?,?,?)");
+    /**
+     * setQueryTimeout sets the query timeout applied to every statement of the adapter.
+     *
+     * @param seconds the timeout in seconds, 0 means no limit.
+     */
+    public void setQueryTimeout(int seconds) {
+        this.queryTimeout = seconds;
+    }
 
+    /**
+     * setQueryTimeout sets the query timeout of an operation, overriding the default one.
+     *
+     * @param operation the adapter operation.
+     * @param seconds   the timeout in seconds, 0 means no limit.
+     */
+    public void setQueryTimeout(PolicyOperation operation, int seconds) {
+        queryTimeouts.put(operation, seconds);
+    }
 
-        Failsafe.with(retryPolicy).run(ctx -> {
-            if (ctx.isRetry()) {
-                retry(ctx);
-            }
-            conn.setAutoCommit(false);
-            int count = 0;
-            try (PreparedStatement ps = conn.prepareStatement(sql)) {
-                for (List<String> rule : rules) {
-                    CasbinRule line = savePolicyLine(ptype, rule);
+    /**
+     * getQueryTimeout returns the query timeout in seconds applied to the statements of an operation.
+     */
+    public int getQueryTimeout(PolicyOperation operation) {
+        return queryTimeouts.getOrDefault(operation, queryTimeout);
+    }
 
-                    ps.setString(1, line.ptype);
-                    ps.setString(2, line.v0);
-                    ps.setString(3, line.v1);
-                    ps.setString(4, line.v2);
-                    ps.setString(5, line.v3);
-                    ps.setString(6, line.v4);
-                    ps.setString(7, line.v5);
-                    ps.addBatch();
-                    if (++count == batchSize) {
-                        count = 0;
-                        ps.executeBatch();
-                        ps.clearBatch();
-                    }
+    /**
+     * setRetryOnTimeout sets whether a timed out operation is retried like a connection failure.
+     * Timeouts are not retried by default, since a lock wait would just be waited on again.
+     */
+    public void setRetryOnTimeout(boolean retryOnTimeout) {
+        this.retryOnTimeout = retryOnTimeout;
+    }
+
+    /**
+     * cancel cancels the in-flight load of the adapter, if any.
+     * The running statements are cancelled, and a paged load stops before its next page.
+     * The cancelled load fails with CasbinAdapterCancelledException and is not retried.
+     */
+    public void cancel() throws SQLException {
+        for (LoadCall call : activeLoads) {
+            call.cancel();
+        }
+    }
+
+    /**
+     * LoadCall is the state of one load: its cancel request and the statements it runs.
+     */
+    private static final class LoadCall {
+        private final Set<Statement> statements = ConcurrentHashMap.newKeySet();
+        private volatile boolean cancelled;
+
+        void cancel() throws SQLException {
+            cancelled = true;
+            cancelStatements();
+        }
+
+        void cancelStatements() throws SQLException {
+            for (Statement statement : statements) {
+                if (!statement.isClosed()) {
+                    statement.cancel();
                 }
-                if (count != 0) {
-                    ps.executeBatch();
+            }
+        }
+
+        void track(PolicyOperation operation, Statement statement) throws SQLException {
+            if (cancelled) {
+                statement.close();
+                throw new CasbinAdapterCancelledException(operation, null);
+            }
+            // The statements of the previous pages are closed by now.
+            for (Iterator<Statement> it = statements.iterator(); it.hasNext(); ) {
+                if (it.next().isClosed()) {
+                    it.remove();
                 }
-                conn.commit();
-            } catch (SQLException e) {
-                conn.rollback();
-                throw e;
-            } finally {
-                conn.setAutoCommit(true);
             }
-        });
+            statements.add(statement);
+        }
     }
 
     /**
-     * removePolicy removes a policy rule from the storage.
+     * execute runs the body of an operation under the retry policy,
+     * translating timeouts and cancellations into adapter exceptions.
      */
-    @Override
-    public void removePolicy(String sec, String ptype, List<String> rule) {
-        if (CollectionUtils.isEmpty(rule)) {
+    protected void execute(PolicyOperation operation, CheckedRunnable body) {
+        execute(operation, null, body);
+    }
+
+    /**
+     * execute runs the body of an operation on the rules of a ptype, recorded as a JFR event
+     * unless it is nested in another operation.
+     */
+    protected void execute(PolicyOperation operation, String ptype, CheckedRunnable body) {
+        if (ptype != null && hasPtypeTables()) {
+            body = routed(tableFor(ptype), body);
+        }
+        if (isLoad(operation) && currentLoad.get() == null) {
+            // The cancellation covers the whole load, every page and retry included.
+            LoadCall call = new LoadCall();
+            activeLoads.add(call);
+            currentLoad.set(call);
+            try {
+                traced(operation, ptype, true, body);
+            } finally {
+                currentLoad.remove();
+                activeLoads.remove(call);
+            }
             return;
         }
+        traced(operation, ptype, true, body);
+    }
 
-        Failsafe.with(retryPolicy).run(ctx -> {
-            if (ctx.isRetry()) {
-                retry(ctx);
-            }
-            String sql = renderActualSql("DELETE FROM casbin_rule WHERE ptype = ?");
-            int columnIndex = 0;
-            for (int i = 0; i < rule.size(); i++) {
-                sql = String.format("%s%s%s%s", sql, " AND v", columnIndex, " = ?");
-                columnIndex++;
-            }
-            while (columnIndex <= 5) {
-                sql = String.format("%s%s%s%s", sql, " AND v", columnIndex, " IS NULL");
-                columnIndex++;
+    /**
+     * traced runs the operation in its JFR event. When versioned, a change is committed together with the bump
+     * of the policy version, see commitWithVersion; otherwise the body bumps the version itself.
+     */
+    private void traced(PolicyOperation operation, String ptype, boolean versioned, CheckedRunnable body) {
+        if (trace.get() != null) {
+            runTraced(operation, versioned, body);
+            return;
+        }
+        AdapterEvents.Trace current = AdapterEvents.begin(operation, tableName);
+        trace.set(current);
+        try {
+            if (ptype != null) {
+                current.setPtype(ptype);
             }
-            try (PreparedStatement ps = conn.prepareStatement(sql)) {
-                ps.setString(1, ptype);
-                for (int j = 0; j < rule.size(); j++) {
-                    ps.setString(j + 2, rule.get(j));
-                }
-                int rows = ps.executeUpdate();
-                if (rows < 1 && removePolicyFailed) {
-                    throw new CasbinAdapterException(String.format("Remove policy error, remove %d rows, expect least 1 rows", rows));
-                }
+            runTraced(operation, versioned, body);
+        } finally {
+            current.finish();
+            trace.remove();
+        }
+    }
+
+    /**
+     * routed returns the body with the SQL rendered for the given rule table while it runs.
+     */
+    private CheckedRunnable routed(String table, CheckedRunnable body) {
+        return () -> {
+            String previous = routedTable.get();
+            routedTable.set(table);
+            try {
+                body.run();
+            } finally {
+                routedTable.set(previous);
             }
-        });
+        };
     }
 
-    @Override
-    public void removePolicies(String sec, String ptype, List<List<String>> rules) {
-        if (CollectionUtils.isEmpty(rules)) {
+    private void runTraced(PolicyOperation operation, boolean versioned, CheckedRunnable body) {
+        if (transactionOpen) {
+            if (!isRead(operation)) {
+                transactionChanged = true;
+            }
+            // The work done earlier in the transaction would be lost with the connection, so it is not retried.
+            run(Failsafe.none(), operation, body);
+            return;
+        }
+        // Changes nested in a transaction are published once by the outermost operation, in its transaction.
+        if (versioned && changeTracking && !isRead(operation) && isAutoCommit()) {
+            run(Failsafe.with(retryPolicy), operation, () -> commitWithVersion(body));
             return;
         }
+        run(Failsafe.with(retryPolicy), operation, body);
+    }
+
+    /**
+     * commitWithVersion runs the change in a transaction bumping the version of the policy, so the change and
+     * its version are committed together: a crash can't commit one without the other, and a node polling the
+     * version never reads it before the change.
+     */
+    private void commitWithVersion(CheckedRunnable body) throws Throwable {
+        Long[] own = new Long[1];
+        try {
+            transactional(() -> {
+                body.run();
+                own[0] = incrementVersion(getConnection());
+            });
+        } catch (Throwable e) {
+            if (own[0] != null) {
+                ownVersions.remove(own[0]);
+            }
+            throw e;
+        }
+    }
 
-        Failsafe.with(retryPolicy).run(ctx -> {
+    private void run(FailsafeExecutor<Object> executor, PolicyOperation operation, CheckedRunnable body) {
+        executor.run(ctx -> {
             if (ctx.isRetry()) {
+                AdapterEvents.retried(operation, tableName, ctx.getAttemptCount(), ctx.getLastException());
                 retry(ctx);
             }
-            conn.setAutoCommit(false);
             try {
-                for (List<String> rule : rules) {
-                    removePolicy(sec, ptype, rule);
-                }
-                conn.commit();
+                body.run();
             } catch (SQLException e) {
-                conn.rollback();
-                throw e;
-            } finally {
-                conn.setAutoCommit(true);
+                throw translateException(operation, e);
             }
         });
     }
 
     /**
-     * removeFilteredPolicy removes policy rules that match the filter from the storage.
+     * executeBatch executes the batch of the statement, counting its rows and batch in the JFR event of the operation.
      */
-    @Override
-    public void removeFilteredPolicy(String sec, String ptype, int fieldIndex, String... fieldValues) {
-        List<String> values = Optional.of(Arrays.asList(fieldValues)).orElse(new ArrayList<>());
-        if (CollectionUtils.isEmpty(values)) {
-            return;
+    protected int[] executeBatch(PreparedStatement ps) throws SQLException {
+        int[] counts = ps.executeBatch();
+        AdapterEvents.Trace current = trace.get();
+        if (current != null) {
+            current.addBatch();
+            long rows = 0;
+            for (int count : counts) {
+                // SUCCESS_NO_INFO is counted as one row.
+                rows += count == Statement.SUCCESS_NO_INFO ? 1 : Math.max(count, 0);
+            }
+            current.addRows(rows);
         }
+        return counts;
+    }
 
-        Failsafe.with(retryPolicy).run(ctx -> {
-            if (ctx.isRetry()) {
-                retry(ctx);
+    /**
+     * executeUpdate executes the statement, counting its rows in the JFR event of the operation.
+     */
+    protected int executeUpdate(PreparedStatement ps) throws SQLException {
+        int rows = ps.executeUpdate();
+        recordRows(rows);
+        return rows;
+    }
+
+    /**
+     * recordRows counts rows read or written by the operation in its JFR event.
+     */
+    protected void recordRows(long rows) {
+        AdapterEvents.Trace current = trace.get();
+        if (current != null) {
+            current.addRows(rows);
+        }
+    }
+
+    /**
+     * getConnection returns the connection of the adapter, opening it on first use.
+     * Threads making the first call at the same time share the one connection opened.
+     */
+    protected Connection getConnection() throws SQLException {
+        Connection connection = conn;
+        if (connection == null) {
+            synchronized (this) {
+                connection = conn;
+                if (connection == null) {
+                    connection = openConnection();
+                    conn = connection;
+                }
             }
-            String sql = renderActualSql("DELETE FROM casbin_rule WHERE ptype = ?");
-            int columnIndex = fieldIndex;
-            for (int i = 0; i < values.size(); i++, columnIndex++) {
-                if (Objects.equals(values.get(i), "")) continue;
-                sql = String.format("%s%s%s%s", sql, " AND v", columnIndex, " = ?");
+        }
+        return connection;
+    }
+
+    /**
+     * openConnection opens a connection of the adapter, setting casbin.instance to the instance id on PostgreSQL,
+     * so that the notify trigger tells the watcher which changes are the ones of this adapter.
+     * Every connection the adapter writes through, its own or one taken for a background task, is opened here,
+     * and closed with closeConnection.
+     */
+    private Connection openConnection() throws SQLException {
+        Connection connection = dataSource.getConnection();
+        if ("PostgreSQL".equals(connection.getMetaData().getDatabaseProductName())) {
+            try (PreparedStatement ps = connection.prepareStatement("SELECT set_config('casbin.instance', ?, false)")) {
+                ps.setString(1, instanceId);
+                ps.execute();
             }
-            try (PreparedStatement ps = conn.prepareStatement(sql)) {
-                ps.setString(1, ptype);
-                int index = 2;
-                for (String value : values) {
-                    if (Objects.equals(value, "")) continue;
-                    ps.setString(index++, value);
-                }
-                int rows = ps.executeUpdate();
-                if (rows < 1 && removePolicyFailed) {
-                    throw new CasbinAdapterException(String.format("Remove filtered policy error, remove %d rows, expect least 1 rows", rows));
+        }
+        return connection;
+    }
+
+    /**
+     * closeConnection resets casbin.instance before closing a connection of openConnection, so that a pooled
+     * connection doesn't mark the changes of its next user as the ones of this adapter.
+     */
+    private void closeConnection(Connection connection) throws SQLException {
+        try {
+            if ("PostgreSQL".equals(connection.getMetaData().getDatabaseProductName())) {
+                try (Statement stmt = connection.createStatement()) {
+                    stmt.execute("RESET casbin.instance");
                 }
             }
-        });
+        } catch (SQLException ignored) {
+            // A broken connection has no session left to reset.
+        } finally {
+            connection.close();
+        }
+    }
+
+    protected Statement createStatement(PolicyOperation operation) throws SQLException {
+        return prepare(operation, getConnection().createStatement());
+    }
+
+    protected PreparedStatement prepareStatement(PolicyOperation operation, String sql) throws SQLException {
+        return prepare(operation, getConnection().prepareStatement(sql));
+    }
+
+    private <T extends Statement> T prepare(PolicyOperation operation, T statement) throws SQLException {
+        int timeout = getQueryTimeout(operation);
+        if (timeout > 0) {
+            statement.setQueryTimeout(timeout);
+        }
+        if (isLoad(operation)) {
+            track(operation, statement);
+        }
+        return statement;
     }
 
     /**
-     * updatePolicy updates a policy rule from the current policy.
+     * track registers a statement of the load running on the thread, so that cancel() stops it,
+     * failing if the load was cancelled before the statement starts.
      */
-    @Override
-    public void updatePolicy(String sec, String ptype, List<String> oldRule, List<String> newRule) {
-        if (CollectionUtils.isEmpty(oldRule) || CollectionUtils.isEmpty(newRule)) {
-            return;
+    protected void track(PolicyOperation operation, Statement statement) throws SQLException {
+        LoadCall call = currentLoad.get();
+        if (call != null) {
+            call.track(operation, statement);
         }
+    }
 
-        String sql = renderActualSql("INSERT INTO casbin_rule (ptype,v0,v1,v2,v3,v4,v5) VALUES(?,?,?,?,?,?,?)");
+    private SQLException translateException(PolicyOperation operation, SQLException e) {
+        LoadCall call = currentLoad.get();
+        if (isLoad(operation) && call != null && call.cancelled) {
+            throw new CasbinAdapterCancelledException(operation, e);
+        }
+        int timeout = getQueryTimeout(operation);
+        if (timeout > 0 && isTimeout(e)) {
+            throw new CasbinAdapterTimeoutException(operation, timeout, e);
+        }
+        return e;
+    }
 
+    private boolean isAutoCommit() {
+        try {
+            return getConnection().getAutoCommit();
+        } catch (SQLException e) {
+            throw new CasbinAdapterException("Failed to read the auto-commit mode.", e);
+        }
+    }
 
-        Failsafe.with(retryPolicy).run(ctx -> {
-            if (ctx.isRetry()) {
-                retry(ctx);
-            }
-            conn.setAutoCommit(false);
-            removePolicy(sec, ptype, oldRule);
-            try (PreparedStatement ps = conn.prepareStatement(sql)) {
-                CasbinRule line = this.savePolicyLine(ptype, newRule);
+    private static boolean isLoad(PolicyOperation operation) {
+        return operation == PolicyOperation.LOAD_POLICY || operation == PolicyOperation.LOAD_FILTERED_POLICY;
+    }
 
-                ps.setString(1, line.ptype);
-                ps.setString(2, line.v0);
-                ps.setString(3, line.v1);
-                ps.setString(4, line.v2);
-                ps.setString(5, line.v3);
-                ps.setString(6, line.v4);
-                ps.setString(7, line.v5);
-                ps.executeUpdate();
-                conn.commit();
-            } catch (SQLException e) {
-                conn.rollback();
-                throw e;
-            } finally {
-                conn.setAutoCommit(true);
-            }
-        });
+    /**
+     * isRead checks whether the operation only reads the storage, so it neither changes a transaction
+     * nor bumps the policy version.
+     */
+    private static boolean isRead(PolicyOperation operation) {
+        return isLoad(operation) || operation == PolicyOperation.QUERY_POLICY;
     }
 
     /**
-     * Close the Connection.
+     * isTimeout checks whether the exception is caused by Statement.setQueryTimeout.
+     * Not every driver throws SQLTimeoutException, so the vendor codes are checked as well.
      */
-    public void close() throws SQLException {
-        conn.close();
+    private static boolean isTimeout(SQLException e) {
+        return e instanceof SQLTimeoutException
+                || "57014".equals(e.getSQLState()) // PostgreSQL query_canceled
+                || "HY008".equals(e.getSQLState()) // SQL Server operation canceled
+                || (e.getErrorCode() == 1013 && String.valueOf(e.getMessage()).startsWith("ORA-")); // Oracle user requested cancel
     }
 
     protected void retry(ExecutionContext<Void> ctx) throws SQLException {
         if (ctx.getExecutionCount() < _DEFAULT_CONNECTION_TRIES) {
-            conn = dataSource.getConnection();
+            conn = openConnection();
         } else {
             throw new Error(ctx.getLastFailure());
         }
     }
 
     protected String renderActualSql(String sql) {
-        return sql.replace(DEFAULT_TABLE_NAME, tableName);
+        String table = routedTable.get();
+        return sql.replace(DEFAULT_TABLE_NAME, table == null ? tableName : table);
+    }
+
+    /**
+     * renderTableSql renders the SQL for the given rule table instead of the table of the adapter.
+     */
+    protected String renderTableSql(String sql, String table) {
+        return sql.replace(DEFAULT_TABLE_NAME, table);
     }
 
     private void escapeCasbinRule(CasbinRule line) {
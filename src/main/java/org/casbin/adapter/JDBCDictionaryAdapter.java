@@ -0,0 +1,794 @@
+// Copyright 2026 The casbin Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package org.casbin.adapter;
+
+import org.apache.commons.collections4.CollectionUtils;
+import org.casbin.jcasbin.exception.CasbinAdapterException;
+import org.casbin.jcasbin.model.Assertion;
+import org.casbin.jcasbin.model.Model;
+
+import javax.sql.DataSource;
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * JDBCDictionaryAdapter is the JDBC adapter for jCasbin using a dictionary-encoded schema.
+ * Every distinct string is stored once in the casbin_rule_dict table and the rules in the
+ * casbin_rule_enc table only hold integer ids, which keeps the table, its index and the bytes
+ * transferred on load small. migrate() also creates a casbin_rule view decoding the rules,
+ * so the string-based queries of the adapter keep working for reads.
+ * The schema options of JDBCAdapter that don't apply to the encoded tables are rejected
+ * by their setters with IllegalArgumentException.
+ */
+public class JDBCDictionaryAdapter extends JDBCAdapter {
+    private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+    private final Map<Integer, String> values = new ConcurrentHashMap<>();
+
+    /**
+     * JDBCDictionaryAdapter is the constructor for JDBCDictionaryAdapter.
+     *
+     * @param driver   the JDBC driver, like "com.mysql.cj.jdbc.Driver".
+     * @param url      the JDBC URL, like "jdbc:mysql://localhost:3306/casbin".
+     * @param username the username of the database.
+     * @param password the password of the database.
+     */
+    public JDBCDictionaryAdapter(String driver, String url, String username, String password) throws Exception {
+        super(driver, url, username, password);
+    }
+
+    /**
+     * The constructor for JDBCDictionaryAdapter, will not try to create database.
+     *
+     * @param dataSource the JDBC DataSource.
+     */
+    public JDBCDictionaryAdapter(DataSource dataSource) throws Exception {
+        super(dataSource);
+    }
+
+    /**
+     * JDBCDictionaryAdapter is the constructor for JDBCDictionaryAdapter.
+     *
+     * @param driver             the JDBC driver, like "com.mysql.cj.jdbc.Driver".
+     * @param url                the JDBC URL, like "jdbc:mysql://localhost:3306/casbin".
+     * @param username           the username of the database.
+     * @param password           the password of the database.
+     * @param removePolicyFailed whether to throw an exception when delete strategy fails.
+     * @param tableName          the table name of casbin rule, also the prefix of the dictionary tables.
+     * @param autoCreateTable    whether to create the tables automatically.
+     */
+    public JDBCDictionaryAdapter(String driver, String url, String username, String password, boolean removePolicyFailed, String tableName, boolean autoCreateTable) throws Exception {
+        super(driver, url, username, password, removePolicyFailed, tableName, autoCreateTable);
+    }
+
+    /**
+     * JDBCDictionaryAdapter is the constructor for JDBCDictionaryAdapter.
+     *
+     * @param dataSource         the JDBC DataSource.
+     * @param removePolicyFailed whether to throw an exception when delete strategy fails.
+     * @param tableName          the table name of casbin rule, also the prefix of the dictionary tables.
+     * @param autoCreateTable    whether to create the tables automatically.
+     */
+    public JDBCDictionaryAdapter(DataSource dataSource, boolean removePolicyFailed, String tableName, boolean autoCreateTable) throws Exception {
+        super(dataSource, removePolicyFailed, tableName, autoCreateTable);
+    }
+
+    /**
+     * JDBCDictionaryAdapter is the constructor for JDBCDictionaryAdapter applying the schema options, like
+     * setChangeTracking or setPolicyExpiry, before creating the tables with migrate().
+     *
+     * @param driver             the JDBC driver, like "com.mysql.cj.jdbc.Driver".
+     * @param url                the JDBC URL, like "jdbc:mysql://localhost:3306/casbin".
+     * @param username           the username of the database.
+     * @param password           the password of the database.
+     * @param removePolicyFailed whether to throw an exception when delete strategy fails.
+     * @param tableName          the table name of casbin rule, also the prefix of the dictionary tables.
+     * @param schemaOptions      sets the schema options of the adapter.
+     */
+    public JDBCDictionaryAdapter(String driver, String url, String username, String password, boolean removePolicyFailed, String tableName, Consumer<? super JDBCDictionaryAdapter> schemaOptions) throws Exception {
+        super(driver, url, username, password, removePolicyFailed, tableName, false);
+        schemaOptions.accept(this);
+        migrate();
+    }
+
+    /**
+     * JDBCDictionaryAdapter is the constructor for JDBCDictionaryAdapter applying the schema options before
+     * creating the tables with migrate().
+     *
+     * @param dataSource         the JDBC DataSource.
+     * @param removePolicyFailed whether to throw an exception when delete strategy fails.
+     * @param tableName          the table name of casbin rule, also the prefix of the dictionary tables.
+     * @param schemaOptions      sets the schema options of the adapter.
+     */
+    public JDBCDictionaryAdapter(DataSource dataSource, boolean removePolicyFailed, String tableName, Consumer<? super JDBCDictionaryAdapter> schemaOptions) throws Exception {
+        super(dataSource, removePolicyFailed, tableName, false);
+        schemaOptions.accept(this);
+        migrate();
+    }
+
+    /**
+     * The encoded rules have no unique key, duplicates are removed with deduplicatePolicies.
+     */
+    @Override
+    public void setUniquePolicies(boolean uniquePolicies) {
+        if (uniquePolicies) {
+            throw new IllegalArgumentException("The dictionary adapter doesn't support unique policies.");
+        }
+    }
+
+    /**
+     * deduplicatePolicies removes the duplicate encoded rules, keeping the oldest of each rule.
+     * The rules are compared by their decoded values in the casbin_rule view, so missing fields
+     * stored as NULL or as the id of the empty string are considered equal.
+     *
+     * @return the number of removed rows.
+     */
+    @Override
+    public int deduplicatePolicies() {
+        int[] removed = new int[1];
+        execute(PolicyOperation.REMOVE_FILTERED_POLICY, () -> transactional(() -> {
+            String columns = "ptype";
+            for (int i = 0; i <= 5; i++) {
+                columns += String.format(", COALESCE(v%d, '')", i);
+            }
+            try (Statement stmt = createStatement(PolicyOperation.REMOVE_FILTERED_POLICY)) {
+                removed[0] = stmt.executeUpdate(renderActualSql("DELETE FROM casbin_rule_enc WHERE id NOT IN " +
+                        "(SELECT id FROM (SELECT MIN(id) AS id FROM casbin_rule GROUP BY " + columns + ") keep)"));
+            }
+        }));
+        return removed[0];
+    }
+
+    /**
+     * The encoded rules are written by savePolicy in place, the view can't be swapped.
+     */
+    @Override
+    public void setShadowSave(boolean shadowSave) {
+        if (shadowSave) {
+            throw new IllegalArgumentException("The dictionary adapter doesn't support shadow save.");
+        }
+    }
+
+    /**
+     * The encoded tables have their own layout, already made of integers.
+     */
+    @Override
+    public void setHighThroughputSchema(boolean highThroughputSchema) {
+        if (highThroughputSchema) {
+            throw new IllegalArgumentException("The dictionary adapter doesn't support the high-throughput schema.");
+        }
+    }
+
+    /**
+     * The encoded table isn't partitioned.
+     */
+    @Override
+    public void setPartitionByPtype(String... ptypes) {
+        throw new IllegalArgumentException("The dictionary adapter doesn't support partitioning.");
+    }
+
+    /**
+     * The encoded table isn't partitioned.
+     */
+    @Override
+    public void setPartitionByHash(int fieldIndex, int partitions) {
+        throw new IllegalArgumentException("The dictionary adapter doesn't support partitioning.");
+    }
+
+    /**
+     * The rules live in casbin_rule_enc behind a view, which has no expiry.
+     */
+    @Override
+    public void setPolicyExpiry(boolean policyExpiry) {
+        if (policyExpiry) {
+            throw new IllegalArgumentException("The dictionary adapter doesn't support policy expiry.");
+        }
+    }
+
+    /**
+     * The rules of every ptype share the dictionary encoded table behind the view.
+     */
+    @Override
+    public void setPtypeTables(String... ptypes) {
+        if (ptypes.length > 0) {
+            throw new IllegalArgumentException("The dictionary adapter doesn't support ptype tables.");
+        }
+    }
+
+    /**
+     * The dictionary tables are not the casbin_rule table of JDBCAdapter, so their markers must differ.
+     */
+    @Override
+    protected String schemaSignature() {
+        return "dictionary;" + super.schemaSignature();
+    }
+
+    /**
+     * createSchema creates the dictionary, the encoded rules and the casbin_rule view. The values of the dictionary
+     * are unique under a binary collation on MySQL and SQL Server, whose default collations would take "alice"
+     * for the stored "Alice", and tables created without it are converted.
+     */
+    @Override
+    protected void createSchema() throws SQLException {
+        String productName = getDatabaseProductName();
+        List<String> sqls = new ArrayList<>();
+
+        switch (productName) {
+            case "MySQL":
+                String collation;
+                boolean converted = true;
+                try (Statement stmt = getConnection().createStatement()) {
+                    collation = mysqlBinaryCollation(stmt);
+                    try (ResultSet rs = stmt.executeQuery(renderActualSql("SELECT collation_name FROM information_schema.columns WHERE table_schema = DATABASE() AND table_name = 'casbin_rule_dict' AND column_name = 'val'"))) {
+                        converted = !rs.next() || collation.equals(rs.getString(1));
+                    }
+                }
+                sqls.add("CREATE TABLE IF NOT EXISTS casbin_rule_dict(id int NOT NULL PRIMARY KEY auto_increment, val VARCHAR(100) CHARACTER SET utf8mb4 COLLATE " + collation + " NOT NULL, UNIQUE KEY casbin_rule_dict_val (val))");
+                if (!converted) {
+                    sqls.add("ALTER TABLE casbin_rule_dict MODIFY val VARCHAR(100) CHARACTER SET utf8mb4 COLLATE " + collation + " NOT NULL");
+                }
+                sqls.add("CREATE TABLE IF NOT EXISTS casbin_rule_enc(id int NOT NULL PRIMARY KEY auto_increment, ptype int NOT NULL, v0 int, v1 int, v2 int, v3 int, v4 int, v5 int, KEY casbin_rule_enc_idx (ptype, v0))");
+                break;
+            case "Oracle":
+                sqls.add(oracleCreate("CREATE TABLE casbin_rule_dict(id NUMBER(10, 0) not NULL primary key, val VARCHAR(100) not NULL unique)"));
+                sqls.add(oracleCreate("CREATE TABLE casbin_rule_enc(id NUMBER(10, 0) not NULL primary key, ptype NUMBER(10, 0) not NULL, v0 NUMBER(10, 0), v1 NUMBER(10, 0), v2 NUMBER(10, 0), v3 NUMBER(10, 0), v4 NUMBER(10, 0), v5 NUMBER(10, 0))"));
+                sqls.add(oracleCreate("CREATE INDEX casbin_rule_enc_idx ON casbin_rule_enc (ptype, v0)"));
+                sqls.add(oracleCreate("CREATE SEQUENCE casbin_rule_dict_seq increment by 1 start with 1 nomaxvalue nocycle cache 100"));
+                sqls.add(oracleCreate("CREATE SEQUENCE casbin_rule_enc_seq increment by 1 start with 1 nomaxvalue nocycle cache 1000"));
+                break;
+            case "Microsoft SQL Server":
+                sqls.add("IF NOT EXISTS (SELECT * FROM sysobjects WHERE name='casbin_rule_dict' and xtype='U') CREATE TABLE casbin_rule_dict(id int NOT NULL primary key identity(1, 1), val VARCHAR(100) COLLATE Latin1_General_BIN2 NOT NULL, CONSTRAINT casbin_rule_dict_val UNIQUE (val))");
+                // The unique constraint blocks the change of the collation, so it is dropped and added again.
+                sqls.add("IF EXISTS (SELECT * FROM sys.columns WHERE object_id = OBJECT_ID('casbin_rule_dict') AND name = 'val' AND collation_name <> 'Latin1_General_BIN2') " +
+                        "BEGIN " +
+                        "DECLARE @constraint sysname = (SELECT name FROM sys.key_constraints WHERE parent_object_id = OBJECT_ID('casbin_rule_dict') AND type = 'UQ'); " +
+                        "IF @constraint IS NOT NULL EXEC('ALTER TABLE casbin_rule_dict DROP CONSTRAINT ' + @constraint); " +
+                        "ALTER TABLE casbin_rule_dict ALTER COLUMN val VARCHAR(100) COLLATE Latin1_General_BIN2 NOT NULL; " +
+                        "ALTER TABLE casbin_rule_dict ADD CONSTRAINT casbin_rule_dict_val UNIQUE (val); " +
+                        "END");
+                sqls.add("IF NOT EXISTS (SELECT * FROM sysobjects WHERE name='casbin_rule_enc' and xtype='U') CREATE TABLE casbin_rule_enc(id int NOT NULL primary key identity(1, 1), ptype int NOT NULL, v0 int, v1 int, v2 int, v3 int, v4 int, v5 int)");
+                sqls.add("IF NOT EXISTS (SELECT * FROM sys.indexes WHERE name='casbin_rule_enc_idx') CREATE INDEX casbin_rule_enc_idx ON casbin_rule_enc (ptype, v0)");
+                break;
+            case "PostgreSQL":
+                sqls.add("CREATE TABLE IF NOT EXISTS casbin_rule_dict(id serial PRIMARY KEY, val VARCHAR(100) NOT NULL UNIQUE)");
+                sqls.add("CREATE TABLE IF NOT EXISTS casbin_rule_enc(id serial PRIMARY KEY, ptype int NOT NULL, v0 int, v1 int, v2 int, v3 int, v4 int, v5 int)");
+                sqls.add("CREATE INDEX IF NOT EXISTS casbin_rule_enc_idx ON casbin_rule_enc (ptype, v0)");
+                break;
+            default:
+                sqls.add("CREATE TABLE IF NOT EXISTS casbin_rule_dict(id int GENERATED ALWAYS AS IDENTITY PRIMARY KEY, val VARCHAR(100) NOT NULL UNIQUE)");
+                sqls.add("CREATE TABLE IF NOT EXISTS casbin_rule_enc(id int GENERATED ALWAYS AS IDENTITY PRIMARY KEY, ptype int NOT NULL, v0 int, v1 int, v2 int, v3 int, v4 int, v5 int)");
+                sqls.add("CREATE INDEX IF NOT EXISTS casbin_rule_enc_idx ON casbin_rule_enc (ptype, v0)");
+                break;
+        }
+
+        String view = "VIEW casbin_rule AS SELECT r.id, p.val AS ptype, d0.val AS v0, d1.val AS v1, d2.val AS v2, d3.val AS v3, d4.val AS v4, d5.val AS v5 " +
+                "FROM casbin_rule_enc r JOIN casbin_rule_dict p ON p.id = r.ptype " +
+                "LEFT JOIN casbin_rule_dict d0 ON d0.id = r.v0 LEFT JOIN casbin_rule_dict d1 ON d1.id = r.v1 " +
+                "LEFT JOIN casbin_rule_dict d2 ON d2.id = r.v2 LEFT JOIN casbin_rule_dict d3 ON d3.id = r.v3 " +
+                "LEFT JOIN casbin_rule_dict d4 ON d4.id = r.v4 LEFT JOIN casbin_rule_dict d5 ON d5.id = r.v5";
+        sqls.add(("Microsoft SQL Server".equals(productName) ? "CREATE OR ALTER " : "CREATE OR REPLACE ") + view);
+
+        try (Statement stmt = getConnection().createStatement()) {
+            for (String sql : sqls) {
+                stmt.executeUpdate(renderActualSql(sql));
+            }
+            if (changeTracking) {
+                createVersionTable(stmt, productName);
+            }
+        }
+    }
+
+    /**
+     * The rules live in casbin_rule_enc behind a view, so changes are detected with the version table only.
+     */
+    @Override
+    protected boolean supportsChangeNotification() {
+        return false;
+    }
+
+    private String oracleCreate(String ddl) {
+        return "declare begin execute immediate '" + ddl + "'; " +
+                "exception when others then " +
+                "if SQLCODE = -955 then " +
+                "null; " +
+                "else raise; " +
+                "end if; " +
+                "end;";
+    }
+
+    /**
+     * loadRules reads all policy rules from the storage, passing each one to the consumer.
+     */
+    @Override
+    protected void loadRules(Consumer<CasbinRule> consumer) {
+        if (loadPageSize > 0) {
+            loadRulesInPages(consumer);
+            return;
+        }
+        execute(PolicyOperation.LOAD_POLICY, () -> {
+            List<int[]> rows = new ArrayList<>();
+            try (Statement stmt = createStatement(PolicyOperation.LOAD_POLICY);
+                 ResultSet rSet = stmt.executeQuery(renderActualSql("SELECT ptype,v0,v1,v2,v3,v4,v5 FROM casbin_rule_enc"))) {
+                while (rSet.next()) {
+                    // getInt returns 0 for NULL, which is never a dictionary id.
+                    int[] row = new int[7];
+                    for (int i = 0; i < row.length; i++) {
+                        row[i] = rSet.getInt(i + 1);
+                    }
+                    rows.add(row);
+                }
+            }
+            fetchValues(rows);
+            for (int[] row : rows) {
+                consumer.accept(decode(row));
+            }
+            recordRows(rows.size());
+        });
+    }
+
+    /**
+     * loadRulesInPages reads the encoded rules in pages ordered by id, like the paged load of JDBCAdapter,
+     * decoding each page once its unknown strings are fetched. A retry resumes from the next page.
+     */
+    private void loadRulesInPages(Consumer<CasbinRule> consumer) {
+        long[] lastId = {Long.MIN_VALUE};
+        execute(PolicyOperation.LOAD_POLICY, () -> {
+            String sql = renderActualSql(limitSql("SELECT id,ptype,v0,v1,v2,v3,v4,v5 FROM casbin_rule_enc WHERE id > ? ORDER BY id"));
+            List<int[]> page = new ArrayList<>(loadPageSize);
+            do {
+                page.clear();
+                long pageLastId = lastId[0];
+                try (PreparedStatement ps = prepareStatement(PolicyOperation.LOAD_POLICY, sql)) {
+                    ps.setLong(1, pageLastId);
+                    ps.setInt(2, loadPageSize);
+                    try (ResultSet rSet = ps.executeQuery()) {
+                        while (rSet.next()) {
+                            pageLastId = rSet.getLong(1);
+                            int[] row = new int[7];
+                            for (int i = 0; i < row.length; i++) {
+                                row[i] = rSet.getInt(i + 2);
+                            }
+                            page.add(row);
+                        }
+                    }
+                }
+                fetchValues(page);
+                for (int[] row : page) {
+                    consumer.accept(decode(row));
+                }
+                recordRows(page.size());
+                lastId[0] = pageLastId;
+            } while (page.size() == loadPageSize);
+        });
+    }
+
+    /**
+     * savePolicy saves all policy rules to the storage.
+     */
+    @Override
+    public void savePolicy(Model model) {
+        List<CasbinRule> lines = new ArrayList<>();
+        for (String section : new String[]{"p", "g"}) {
+            if (!model.model.containsKey(section)) {
+                continue;
+            }
+            for (Map.Entry<String, Assertion> entry : model.model.get(section).entrySet()) {
+                for (List<String> rule : entry.getValue().policy) {
+                    lines.add(savePolicyLine(entry.getKey(), rule));
+                }
+            }
+        }
+
+        execute(PolicyOperation.SAVE_POLICY, () -> transactional(() -> {
+            try (Statement statement = createStatement(PolicyOperation.SAVE_POLICY)) {
+                statement.execute(renderActualSql("delete from casbin_rule_enc"));
+                insertLines(PolicyOperation.SAVE_POLICY, lines);
+            }
+        }));
+    }
+
+    @Override
+    public void addPolicies(String sec, String ptype, List<List<String>> rules) {
+        if (CollectionUtils.isEmpty(rules)) {
+            return;
+        }
+
+        List<CasbinRule> lines = new ArrayList<>();
+        for (List<String> rule : rules) {
+            lines.add(savePolicyLine(ptype, rule));
+        }
+
+        execute(PolicyOperation.ADD_POLICY, ptype, () -> transactional(() -> insertLines(PolicyOperation.ADD_POLICY, lines)));
+    }
+
+    /**
+     * removePolicy removes a policy rule from the storage.
+     */
+    @Override
+    public void removePolicy(String sec, String ptype, List<String> rule) {
+        if (CollectionUtils.isEmpty(rule)) {
+            return;
+        }
+
+        execute(PolicyOperation.REMOVE_POLICY, ptype, () -> {
+            List<String> fields = new ArrayList<>();
+            fields.add(ptype);
+            fields.addAll(rule);
+            fetchIds(PolicyOperation.REMOVE_POLICY, fields, false);
+
+            int rows = 0;
+            if (ids.keySet().containsAll(fields)) {
+                String sql = renderActualSql("DELETE FROM casbin_rule_enc WHERE ptype = ?");
+                for (int i = 0; i <= 5; i++) {
+                    sql += i < rule.size() ? " AND v" + i + " = ?" : " AND v" + i + " IS NULL";
+                }
+                try (PreparedStatement ps = prepareStatement(PolicyOperation.REMOVE_POLICY, sql)) {
+                    for (int i = 0; i < fields.size(); i++) {
+                        ps.setInt(i + 1, ids.get(fields.get(i)));
+                    }
+                    rows = executeUpdate(ps);
+                }
+            }
+            if (rows < 1 && removePolicyFailed) {
+                throw new CasbinAdapterException(String.format("Remove policy error, remove %d rows, expect least 1 rows", rows));
+            }
+        });
+    }
+
+    /**
+     * removeFilteredPolicy removes policy rules that match the filter from the storage.
+     */
+    @Override
+    public void removeFilteredPolicy(String sec, String ptype, int fieldIndex, String... fieldValues) {
+        if (fieldValues == null || fieldValues.length == 0) {
+            return;
+        }
+
+        execute(PolicyOperation.REMOVE_FILTERED_POLICY, ptype, () -> {
+            List<String> fields = new ArrayList<>();
+            fields.add(ptype);
+            String sql = renderActualSql("DELETE FROM casbin_rule_enc WHERE ptype = ?");
+            for (int i = 0; i < fieldValues.length; i++) {
+                if (Objects.equals(fieldValues[i], "")) continue;
+                sql += " AND v" + (fieldIndex + i) + " = ?";
+                fields.add(fieldValues[i]);
+            }
+            fetchIds(PolicyOperation.REMOVE_FILTERED_POLICY, fields, false);
+
+            int rows = 0;
+            if (ids.keySet().containsAll(fields)) {
+                try (PreparedStatement ps = prepareStatement(PolicyOperation.REMOVE_FILTERED_POLICY, sql)) {
+                    for (int i = 0; i < fields.size(); i++) {
+                        ps.setInt(i + 1, ids.get(fields.get(i)));
+                    }
+                    rows = executeUpdate(ps);
+                }
+            }
+            if (rows < 1 && removePolicyFailed) {
+                throw new CasbinAdapterException(String.format("Remove filtered policy error, remove %d rows, expect least 1 rows", rows));
+            }
+        });
+    }
+
+    @Override
+    protected String removeFilterSql(PolicyFilter filter) {
+        if (filter.getFieldValues().isEmpty()) {
+            return null;
+        }
+        String sql = renderActualSql("DELETE FROM casbin_rule_enc WHERE ptype = ?");
+        List<String> values = filter.getFieldValues();
+        for (int i = 0; i < values.size(); i++) {
+            if (Objects.equals(values.get(i), "")) continue;
+            sql += " AND v" + (filter.getFieldIndex() + i) + " = ?";
+        }
+        return sql;
+    }
+
+    /**
+     * bindRemoveFilter sets the dictionary ids of the ptype and the values, leaving the filter
+     * out of the batch when one of them isn't in the dictionary, since no rule can match it then.
+     */
+    @Override
+    protected boolean bindRemoveFilter(PreparedStatement ps, PolicyFilter filter) throws SQLException {
+        List<String> fields = new ArrayList<>();
+        fields.add(filter.getPtype());
+        for (String value : filter.getFieldValues()) {
+            if (!Objects.equals(value, "")) {
+                fields.add(value);
+            }
+        }
+        fetchIds(PolicyOperation.REMOVE_FILTERED_POLICY, fields, false);
+        if (!ids.keySet().containsAll(fields)) {
+            return false;
+        }
+        for (int i = 0; i < fields.size(); i++) {
+            ps.setInt(i + 1, ids.get(fields.get(i)));
+        }
+        return true;
+    }
+
+    /**
+     * copyPolicies copies the rules of the ptype whose field is fromValue to new rules whose field is toValue,
+     * with one INSERT ... SELECT over the dictionary ids.
+     */
+    @Override
+    public long copyPolicies(String ptype, int fieldIndex, String fromValue, String toValue) {
+        if (fieldIndex < 0 || fieldIndex > 5) {
+            throw new IllegalArgumentException("Invalid field index: " + fieldIndex);
+        }
+        long[] rows = new long[1];
+        execute(PolicyOperation.ADD_POLICY, ptype, () -> {
+            rows[0] = 0;
+            fetchIds(PolicyOperation.ADD_POLICY, Arrays.asList(ptype, fromValue), false);
+            if (!ids.containsKey(ptype) || !ids.containsKey(fromValue)) {
+                return;
+            }
+            fetchIds(PolicyOperation.ADD_POLICY, Collections.singletonList(toValue), true);
+            String sql = copySql("casbin_rule_enc", isOracle() ? "casbin_rule_enc_seq.nextval" : null, fieldIndex);
+            try (PreparedStatement ps = prepareStatement(PolicyOperation.ADD_POLICY, renderActualSql(sql))) {
+                ps.setInt(1, ids.get(toValue));
+                ps.setInt(2, ids.get(ptype));
+                ps.setInt(3, ids.get(fromValue));
+                rows[0] = executeUpdate(ps);
+            }
+            recordRows(rows[0]);
+        });
+        return rows[0];
+    }
+
+    /**
+     * removeFilteredPolicyReturnsEffects removes policy rules that match the filter from the storage and returns them.
+     * The rules are read from the casbin_rule view, then deleted by id from casbin_rule_enc in one transaction.
+     */
+    @Override
+    public List<List<String>> removeFilteredPolicyReturnsEffects(String sec, String ptype, int fieldIndex, String... fieldValues) {
+        List<List<String>> removed = new ArrayList<>();
+        if (fieldValues == null || fieldValues.length == 0) {
+            return removed;
+        }
+
+        execute(PolicyOperation.REMOVE_FILTERED_POLICY, ptype, () -> {
+            removed.clear();
+            List<String> params = new ArrayList<>();
+            params.add(ptype);
+            String sql = renderActualSql("SELECT id, ptype, v0, v1, v2, v3, v4, v5 FROM casbin_rule WHERE ptype = ?");
+            for (int i = 0; i < fieldValues.length; i++) {
+                if (Objects.equals(fieldValues[i], "")) continue;
+                sql += " AND v" + (fieldIndex + i) + " = ?";
+                params.add(fieldValues[i]);
+            }
+            String selectSql = sql;
+            transactional(() -> deleteSelectedRules(PolicyOperation.REMOVE_FILTERED_POLICY, selectSql, params,
+                    renderActualSql("DELETE FROM casbin_rule_enc WHERE id = ?"), removed));
+            recordRows(removed.size());
+            if (removed.isEmpty() && removePolicyFailed) {
+                throw new CasbinAdapterException("Remove filtered policy error, remove 0 rows, expect least 1 rows");
+            }
+        });
+        return removed;
+    }
+
+    /**
+     * updatePolicy updates a policy rule from the current policy.
+     */
+    @Override
+    public void updatePolicy(String sec, String ptype, List<String> oldRule, List<String> newRule) {
+        if (CollectionUtils.isEmpty(oldRule) || CollectionUtils.isEmpty(newRule)) {
+            return;
+        }
+
+        execute(PolicyOperation.UPDATE_POLICY, ptype, () -> transactional(() -> {
+            removePolicy(sec, ptype, oldRule);
+            insertLines(PolicyOperation.UPDATE_POLICY, Collections.singletonList(savePolicyLine(ptype, newRule)));
+        }));
+    }
+
+    /**
+     * fingerprintSql returns the query of the row count, the highest id and an aggregate hash of the encoded rules.
+     * A rule is hashed from its string ids field by field, as a polynomial modulo 2^31 - 1, where a missing field
+     * is 0, which no string id takes. The strings of the dictionary are never updated, so the ids identify the rule.
+     * Like the base query, it skips the expired rules, although setPolicyExpiry is refused for now.
+     */
+    @Override
+    protected String fingerprintSql() throws SQLException {
+        String productName = getDatabaseProductName();
+        String type;
+        switch (productName) {
+            case "MySQL":
+                type = "SIGNED";
+                break;
+            case "Oracle":
+                type = "NUMBER(19)";
+                break;
+            default:
+                type = "BIGINT";
+                break;
+        }
+        String hash = "CAST(ptype AS " + type + ")";
+        for (int i = 0; i <= 5; i++) {
+            String step = hash + " * 1000003 + CAST(COALESCE(v" + i + ", 0) AS " + type + ")";
+            hash = "Microsoft SQL Server".equals(productName) ? "(" + step + ") % 2147483647" : "MOD(" + step + ", 2147483647)";
+        }
+        String expiry = expiryCondition();
+        return "SELECT COUNT(*), MAX(id), SUM(" + hash + ") FROM casbin_rule_enc" + (expiry == null ? "" : " WHERE " + expiry);
+    }
+
+    @Override
+    protected void deleteAllRules(Statement stmt) throws SQLException {
+        stmt.execute(renderActualSql("delete from casbin_rule_enc"));
+    }
+
+    @Override
+    protected void insertRules(PolicyOperation operation, List<CasbinRule> lines) throws SQLException {
+        insertLines(operation, lines);
+    }
+
+    /**
+     * insertLines encodes the lines, adding the missing strings to the dictionary, and inserts them in batches.
+     */
+    private void insertLines(PolicyOperation operation, List<CasbinRule> lines) throws SQLException {
+        Set<String> fields = new HashSet<>();
+        for (CasbinRule line : lines) {
+            fields.addAll(Arrays.asList(line.toStringArray()));
+        }
+        fields.remove(null);
+        fetchIds(operation, fields, true);
+
+        String sql = isOracle()
+                ? "INSERT INTO casbin_rule_enc (id,ptype,v0,v1,v2,v3,v4,v5) VALUES(casbin_rule_enc_seq.nextval,?,?,?,?,?,?,?)"
+                : "INSERT INTO casbin_rule_enc (ptype,v0,v1,v2,v3,v4,v5) VALUES(?,?,?,?,?,?,?)";
+        try (PreparedStatement ps = prepareStatement(operation, renderActualSql(sql))) {
+            int count = 0;
+            for (CasbinRule line : lines) {
+                String[] row = line.toStringArray();
+                for (int i = 0; i < row.length; i++) {
+                    if (row[i] == null) {
+                        ps.setNull(i + 1, Types.INTEGER);
+                    } else {
+                        ps.setInt(i + 1, ids.get(row[i]));
+                    }
+                }
+                ps.addBatch();
+                if (++count == batchSize) {
+                    count = 0;
+                    executeBatch(ps);
+                    ps.clearBatch();
+                }
+            }
+            if (count != 0) {
+                executeBatch(ps);
+            }
+        }
+    }
+
+    /**
+     * fetchIds caches the dictionary ids of the strings, inserting the missing ones if create is true.
+     */
+    private void fetchIds(PolicyOperation operation, Collection<String> fields, boolean create) throws SQLException {
+        List<String> missing = new ArrayList<>();
+        for (String field : new LinkedHashSet<>(fields)) {
+            if (!ids.containsKey(field)) {
+                missing.add(field);
+            }
+        }
+        if (missing.isEmpty()) {
+            return;
+        }
+        selectIds(operation, missing);
+        missing.removeIf(ids::containsKey);
+        if (missing.isEmpty() || !create) {
+            return;
+        }
+
+        String sql = isOracle()
+                ? "INSERT INTO casbin_rule_dict (id,val) VALUES(casbin_rule_dict_seq.nextval,?)"
+                : "INSERT INTO casbin_rule_dict (val) VALUES(?)";
+        try (PreparedStatement ps = prepareStatement(operation, renderActualSql(sql))) {
+            for (String field : missing) {
+                ps.setString(1, field);
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+        selectIds(operation, missing);
+    }
+
+    private void selectIds(PolicyOperation operation, List<String> fields) throws SQLException {
+        for (int from = 0; from < fields.size(); from += batchSize) {
+            List<String> chunk = fields.subList(from, Math.min(from + batchSize, fields.size()));
+            String sql = renderActualSql("SELECT id, val FROM casbin_rule_dict WHERE val IN (" + placeholders(chunk.size()) + ")");
+            try (PreparedStatement ps = prepareStatement(operation, sql)) {
+                for (int i = 0; i < chunk.size(); i++) {
+                    ps.setString(i + 1, chunk.get(i));
+                }
+                try (ResultSet rSet = ps.executeQuery()) {
+                    while (rSet.next()) {
+                        cache(rSet.getInt(1), rSet.getString(2));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * fetchValues caches the strings of the dictionary ids referenced by the rows that are not known yet.
+     */
+    private void fetchValues(List<int[]> rows) throws SQLException {
+        Set<Integer> unknown = new LinkedHashSet<>();
+        for (int[] row : rows) {
+            for (int id : row) {
+                if (id != 0 && !values.containsKey(id)) {
+                    unknown.add(id);
+                }
+            }
+        }
+        List<Integer> missing = new ArrayList<>(unknown);
+        for (int from = 0; from < missing.size(); from += batchSize) {
+            List<Integer> chunk = missing.subList(from, Math.min(from + batchSize, missing.size()));
+            String sql = renderActualSql("SELECT id, val FROM casbin_rule_dict WHERE id IN (" + placeholders(chunk.size()) + ")");
+            try (PreparedStatement ps = prepareStatement(PolicyOperation.LOAD_POLICY, sql)) {
+                for (int i = 0; i < chunk.size(); i++) {
+                    ps.setInt(i + 1, chunk.get(i));
+                }
+                try (ResultSet rSet = ps.executeQuery()) {
+                    while (rSet.next()) {
+                        cache(rSet.getInt(1), rSet.getString(2));
+                    }
+                }
+            }
+        }
+    }
+
+    private CasbinRule decode(int[] row) {
+        CasbinRule line = new CasbinRule();
+        line.ptype = decode(row[0]);
+        line.v0 = decode(row[1]);
+        line.v1 = decode(row[2]);
+        line.v2 = decode(row[3]);
+        line.v3 = decode(row[4]);
+        line.v4 = decode(row[5]);
+        line.v5 = decode(row[6]);
+        return line;
+    }
+
+    private String decode(int id) {
+        return id == 0 ? "" : values.getOrDefault(id, "");
+    }
+
+    private void cache(int id, String value) {
+        ids.put(value, id);
+        values.put(id, value);
+    }
+
+    /**
+     * rollbackConnection rolls back the transaction and forgets the cached ids,
+     * because the dictionary entries inserted by the transaction are gone.
+     */
+    @Override
+    protected void rollbackConnection() throws SQLException {
+        ids.clear();
+        values.clear();
+        getConnection().rollback();
+    }
+
+    private boolean isOracle() throws SQLException {
+        return "Oracle".equals(getDatabaseProductName());
+    }
+
+    private static String placeholders(int count) {
+        return String.join(",", Collections.nCopies(count, "?"));
+    }
+}
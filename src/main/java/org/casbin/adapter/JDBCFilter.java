@@ -0,0 +1,172 @@
+// Copyright 2026 The casbin Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package org.casbin.adapter;
+
+import java.util.*;
+
+/**
+ * JDBCFilter is the filter of JDBCAdapter.loadFilteredPolicy compiled into parameterized SQL.
+ * A filter is a list of clauses matched with OR. A clause restricts the ptypes and the fields
+ * of the rules: the fields are matched with AND, and the exact values and prefixes given for
+ * the same field are matched with OR. A filter without clauses matches every rule.
+ *
+ * <pre>
+ * JDBCFilter filter = new JDBCFilter();
+ * filter.clause("p").in(0, users).prefix(1, "domain1/");
+ * filter.clause("g", "g2").in(0, users);
+ * </pre>
+ */
+public class JDBCFilter {
+    // Oracle rejects IN lists longer than 1000 expressions.
+    private static final int MAX_IN_LIST = 1000;
+    private static final char LIKE_ESCAPE = '!';
+
+    private final List<Clause> clauses = new ArrayList<>();
+
+    /**
+     * clause adds a clause matching the rules of the ptypes, or of any ptype if none is given.
+     *
+     * @param ptypes the ptypes, like "p", "g" or "g2".
+     * @return the clause, to restrict its fields.
+     */
+    public Clause clause(String... ptypes) {
+        Clause clause = new Clause(Arrays.asList(ptypes));
+        clauses.add(clause);
+        return clause;
+    }
+
+    public List<Clause> getClauses() {
+        return Collections.unmodifiableList(clauses);
+    }
+
+    /**
+     * toSql compiles the filter into a WHERE condition, appending its parameters to params.
+     *
+     * @param productName the product name of the database, like "MySQL", whose LIKE wildcards the prefixes escape.
+     * @return the condition, or null if the filter matches every rule.
+     */
+    String toSql(List<String> params, String productName) {
+        if (clauses.isEmpty()) {
+            return null;
+        }
+        List<String> conditions = new ArrayList<>();
+        for (Clause clause : clauses) {
+            conditions.add("(" + clause.toSql(params, productName) + ")");
+        }
+        return String.join(" OR ", conditions);
+    }
+
+    /**
+     * Clause is a conjunction of field conditions over a set of ptypes.
+     */
+    public static class Clause {
+        private final List<String> ptypes;
+        private final SortedMap<Integer, List<String>> values = new TreeMap<>();
+        private final SortedMap<Integer, List<String>> prefixes = new TreeMap<>();
+
+        private Clause(List<String> ptypes) {
+            this.ptypes = ptypes;
+        }
+
+        /**
+         * in matches the rules whose field equals one of the values.
+         *
+         * @param fieldIndex the index of the field, 0 for v0.
+         * @param values     the accepted values.
+         * @return the clause.
+         */
+        public Clause in(int fieldIndex, String... values) {
+            return in(fieldIndex, Arrays.asList(values));
+        }
+
+        public Clause in(int fieldIndex, Collection<String> values) {
+            checkFieldIndex(fieldIndex);
+            this.values.computeIfAbsent(fieldIndex, k -> new ArrayList<>()).addAll(values);
+            return this;
+        }
+
+        /**
+         * prefix matches the rules whose field starts with one of the prefixes.
+         *
+         * @param fieldIndex the index of the field, 0 for v0.
+         * @param prefixes   the accepted prefixes.
+         * @return the clause.
+         */
+        public Clause prefix(int fieldIndex, String... prefixes) {
+            checkFieldIndex(fieldIndex);
+            this.prefixes.computeIfAbsent(fieldIndex, k -> new ArrayList<>()).addAll(Arrays.asList(prefixes));
+            return this;
+        }
+
+        public List<String> getPtypes() {
+            return Collections.unmodifiableList(ptypes);
+        }
+
+        private String toSql(List<String> params, String productName) {
+            List<String> conditions = new ArrayList<>();
+            if (!ptypes.isEmpty()) {
+                conditions.add(inSql("ptype", ptypes, params));
+            }
+            Set<Integer> fields = new TreeSet<>(values.keySet());
+            fields.addAll(prefixes.keySet());
+            for (int field : fields) {
+                String column = "v" + field;
+                List<String> alternatives = new ArrayList<>();
+                if (values.containsKey(field) && !values.get(field).isEmpty()) {
+                    alternatives.add(inSql(column, values.get(field), params));
+                }
+                for (String prefix : prefixes.getOrDefault(field, Collections.emptyList())) {
+                    alternatives.add(column + " LIKE ? ESCAPE '" + LIKE_ESCAPE + "'");
+                    params.add(escapeLike(prefix, productName) + "%");
+                }
+                // An empty value set matches nothing, like an empty IN list would.
+                conditions.add(alternatives.isEmpty() ? "1 = 0" : "(" + String.join(" OR ", alternatives) + ")");
+            }
+            return conditions.isEmpty() ? "1 = 1" : String.join(" AND ", conditions);
+        }
+
+        private static void checkFieldIndex(int fieldIndex) {
+            if (fieldIndex < 0 || fieldIndex > 5) {
+                throw new IllegalArgumentException("Invalid field index: " + fieldIndex);
+            }
+        }
+    }
+
+    private static String inSql(String column, List<String> values, List<String> params) {
+        List<String> lists = new ArrayList<>();
+        for (int from = 0; from < values.size(); from += MAX_IN_LIST) {
+            List<String> chunk = values.subList(from, Math.min(from + MAX_IN_LIST, values.size()));
+            lists.add(column + " IN (" + String.join(",", Collections.nCopies(chunk.size(), "?")) + ")");
+            params.addAll(chunk);
+        }
+        return lists.size() == 1 ? lists.get(0) : "(" + String.join(" OR ", lists) + ")";
+    }
+
+    /**
+     * escapeLike escapes the wildcards of LIKE in the prefix. On SQL Server, [ also starts a character class,
+     * while Oracle rejects the escape character before anything but %, _ and itself.
+     */
+    private static String escapeLike(String prefix, String productName) {
+        boolean brackets = "Microsoft SQL Server".equals(productName);
+        StringBuilder sb = new StringBuilder();
+        for (char c : prefix.toCharArray()) {
+            if (c == '%' || c == '_' || c == LIKE_ESCAPE || (brackets && c == '[')) {
+                sb.append(LIKE_ESCAPE);
+            }
+            sb.append(c);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,248 @@
+// Copyright 2026 The casbin Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package org.casbin.adapter;
+
+import org.casbin.jcasbin.persist.Watcher;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.function.Consumer;
+
+/**
+ * JDBCWatcher is the watcher for jCasbin notifying the enforcer when the policy is changed by another node.
+ * It requires change tracking on the adapter (see JDBCBaseAdapter.setChangeTracking and migrate()).
+ * On PostgreSQL it waits for the notifications of the trigger installed by migrate() with LISTEN,
+ * on the other databases it polls the version row bumped by every change of the adapter.
+ * The watcher uses its own connection from the DataSource of the adapter, and starts watching
+ * once the update callback is set. The changes made through the adapter itself, on any of its connections,
+ * don't trigger the callback.
+ * A watcher is meant to be attached to one adapter at a time.
+ *
+ * <pre>
+ * adapter.setChangeTracking(true);
+ * adapter.migrate();
+ * enforcer.setWatcher(new JDBCWatcher(adapter));
+ * </pre>
+ */
+public class JDBCWatcher implements Watcher, AutoCloseable {
+    private static final Duration DEFAULT_POLL_INTERVAL = Duration.ofSeconds(1);
+
+    private final JDBCBaseAdapter adapter;
+    private final Duration pollInterval;
+    private final boolean listening;
+    private Thread thread;
+    private volatile boolean running = true;
+    private volatile Runnable runnable;
+    private volatile Consumer<String> consumer;
+    private Connection conn;
+    private long version;
+
+    /**
+     * JDBCWatcher is the constructor for JDBCWatcher, checking for changes every second.
+     *
+     * @param adapter the adapter with change tracking enabled.
+     * @throws IllegalArgumentException if change tracking is disabled on the adapter.
+     */
+    public JDBCWatcher(JDBCAdapter adapter) throws SQLException {
+        this(adapter, DEFAULT_POLL_INTERVAL);
+    }
+
+    /**
+     * JDBCWatcher is the constructor for JDBCWatcher.
+     *
+     * @param adapter      the adapter with change tracking enabled.
+     * @param pollInterval the interval between two checks of the version row,
+     *                     or the longest wait for a notification on PostgreSQL.
+     * @throws IllegalArgumentException if change tracking is disabled on the adapter.
+     */
+    public JDBCWatcher(JDBCAdapter adapter, Duration pollInterval) throws SQLException {
+        if (!adapter.changeTracking) {
+            throw new IllegalArgumentException("The watcher requires change tracking on the adapter.");
+        }
+        this.adapter = adapter;
+        this.pollInterval = pollInterval;
+        this.listening = adapter.supportsChangeNotification();
+        if (!listening) {
+            adapter.recordOwnVersions = true;
+        }
+        connect();
+    }
+
+    @Override
+    public void setUpdateCallback(Runnable runnable) {
+        this.runnable = runnable;
+        start();
+    }
+
+    @Override
+    public void setUpdateCallback(Consumer<String> func) {
+        this.consumer = func;
+        start();
+    }
+
+    /**
+     * update publishes a change of the local enforcer. The changes made through the adapter
+     * are already published by its change tracking, so there is nothing left to do.
+     */
+    @Override
+    public void update() {
+    }
+
+    /**
+     * close stops watching and closes the connection of the watcher.
+     */
+    @Override
+    public void close() throws SQLException {
+        running = false;
+        adapter.recordOwnVersions = false;
+        adapter.ownVersions.clear();
+        synchronized (this) {
+            if (thread != null) {
+                thread.interrupt();
+            }
+            if (conn != null) {
+                conn.close();
+                conn = null;
+            }
+        }
+    }
+
+    private synchronized void start() {
+        if (thread != null || !running) {
+            return;
+        }
+        thread = new Thread(this::watch, "jcasbin-jdbc-watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void watch() {
+        while (running) {
+            try {
+                String message = poll();
+                if (message != null) {
+                    notifyUpdate(message);
+                }
+            } catch (SQLException e) {
+                reconnect();
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * poll waits for the next change and returns its message, or null if nothing changed.
+     */
+    private String poll() throws SQLException, InterruptedException {
+        Connection current;
+        synchronized (this) {
+            current = conn;
+        }
+        if (current == null) {
+            throw new SQLException("The watcher is not connected.");
+        }
+
+        if (listening) {
+            PGNotification[] notifications = current.unwrap(PGConnection.class).getNotifications((int) pollInterval.toMillis());
+            if (notifications == null) {
+                return null;
+            }
+            String message = null;
+            for (PGNotification notification : notifications) {
+                // The trigger sends the instance id of the adapter that made the change, whichever its connection.
+                if (!adapter.instanceId.equals(notification.getParameter())) {
+                    message = notification.getName();
+                }
+            }
+            return message;
+        }
+
+        Thread.sleep(pollInterval.toMillis());
+        long latest = readVersion(current);
+        if (latest == version) {
+            return null;
+        }
+        // The change is our own if every version in between was bumped by the adapter.
+        boolean own = adapter.ownVersions.subSet(version, false, latest, true).size() == latest - version;
+        adapter.ownVersions.headSet(latest, true).clear();
+        version = latest;
+        return own ? null : String.valueOf(latest);
+    }
+
+    private void notifyUpdate(String message) {
+        Consumer<String> consumer = this.consumer;
+        Runnable runnable = this.runnable;
+        if (consumer != null) {
+            consumer.accept(message);
+        } else if (runnable != null) {
+            runnable.run();
+        }
+    }
+
+    private synchronized void connect() throws SQLException {
+        conn = adapter.dataSource.getConnection();
+        if (listening) {
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute(adapter.renderActualSql("LISTEN casbin_rule"));
+            }
+        } else {
+            version = readVersion(conn);
+            adapter.ownVersions.headSet(version, true).clear();
+        }
+        if (!running) {
+            conn.close();
+            conn = null;
+        }
+    }
+
+    /**
+     * reconnect replaces the broken connection, retrying until the watcher is closed.
+     * A change may have been missed meanwhile, so the enforcer is notified once reconnected.
+     */
+    private void reconnect() {
+        while (running) {
+            try {
+                synchronized (this) {
+                    if (conn != null) {
+                        conn.close();
+                    }
+                }
+            } catch (SQLException ignored) {
+            }
+            try {
+                Thread.sleep(pollInterval.toMillis());
+                connect();
+                notifyUpdate("reconnected");
+                return;
+            } catch (SQLException ignored) {
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private long readVersion(Connection connection) throws SQLException {
+        try (Statement stmt = connection.createStatement();
+             ResultSet rSet = stmt.executeQuery(adapter.renderActualSql("SELECT version FROM casbin_rule_version WHERE id = 1"))) {
+            return rSet.next() ? rSet.getLong(1) : 0;
+        }
+    }
+}
@@ -0,0 +1,256 @@
+// Copyright 2026 The casbin Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.casbin.adapter;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * JfrAdapterEvents is the Recorder of AdapterEvents backed by JDK Flight Recorder.
+ * The adapter is compiled for Java 8, so the events are defined at runtime through
+ * jdk.jfr.EventFactory by reflection instead of referencing jdk.jfr at compile time.
+ * A FlightRecorderListener keeps track of whether a recording is running, so that without one
+ * an operation only reads a volatile field, without any reflective call or allocation.
+ */
+final class JfrAdapterEvents implements AdapterEvents.Recorder {
+    static final String OPERATION_EVENT = "org.casbin.adapter.Operation";
+    static final String RETRY_EVENT = "org.casbin.adapter.OperationRetry";
+    static final String FAILURE_EVENT = "org.casbin.adapter.TaskFailure";
+
+    private static final String[] CATEGORY = {"jCasbin", "JDBC Adapter"};
+
+    // The field indexes of the events, in the order they are declared below.
+    private static final int OPERATION = 0;
+    private static final int TABLE_NAME = 1;
+    private static final int PTYPE = 2;
+    private static final int ROWS = 3;
+    private static final int BATCHES = 4;
+    private static final int ATTEMPT = 2;
+    private static final int FAILURE = 3;
+    private static final int TASK = 0;
+    private static final int TASK_FAILURE = 2;
+
+    private final Object operationFactory;
+    private final Object retryFactory;
+    private final Object failureFactory;
+    private final Method newEvent;
+    private final Method isEnabled;
+    private final Method begin;
+    private final Method commit;
+    private final Method set;
+    private final Method isInitialized;
+    private final Method getFlightRecorder;
+    private final Method getRecordings;
+    private final Method getState;
+    private volatile boolean recording;
+
+    JfrAdapterEvents() throws ReflectiveOperationException {
+        Class<?> factoryClass = Class.forName("jdk.jfr.EventFactory");
+        Class<?> eventClass = Class.forName("jdk.jfr.Event");
+        Method create = factoryClass.getMethod("create", List.class, List.class);
+        operationFactory = create.invoke(null,
+                Arrays.asList(
+                        annotation("Name", OPERATION_EVENT),
+                        annotation("Label", "Casbin Policy Operation"),
+                        annotation("Category", CATEGORY),
+                        annotation("Description", "An operation of the jCasbin JDBC adapter, including its retries"),
+                        annotation("StackTrace", false)),
+                Arrays.asList(
+                        field(String.class, "operation", "Operation"),
+                        field(String.class, "tableName", "Table"),
+                        field(String.class, "ptype", "Policy Type"),
+                        field(long.class, "rows", "Rows"),
+                        field(int.class, "batches", "Batches")));
+        retryFactory = create.invoke(null,
+                Arrays.asList(
+                        annotation("Name", RETRY_EVENT),
+                        annotation("Label", "Casbin Policy Operation Retry"),
+                        annotation("Category", CATEGORY),
+                        annotation("Description", "A retry of an operation of the jCasbin JDBC adapter after a failure")),
+                Arrays.asList(
+                        field(String.class, "operation", "Operation"),
+                        field(String.class, "tableName", "Table"),
+                        field(int.class, "attempt", "Attempt"),
+                        field(String.class, "failure", "Failure")));
+        failureFactory = create.invoke(null,
+                Arrays.asList(
+                        annotation("Name", FAILURE_EVENT),
+                        annotation("Label", "Casbin Adapter Task Failure"),
+                        annotation("Category", CATEGORY),
+                        annotation("Description", "A failed run of a background task of the jCasbin JDBC adapter")),
+                Arrays.asList(
+                        field(String.class, "task", "Task"),
+                        field(String.class, "tableName", "Table"),
+                        field(String.class, "failure", "Failure")));
+        newEvent = factoryClass.getMethod("newEvent");
+        isEnabled = eventClass.getMethod("isEnabled");
+        begin = eventClass.getMethod("begin");
+        commit = eventClass.getMethod("commit");
+        set = eventClass.getMethod("set", int.class, Object.class);
+
+        Class<?> recorderClass = Class.forName("jdk.jfr.FlightRecorder");
+        Class<?> listenerClass = Class.forName("jdk.jfr.FlightRecorderListener");
+        isInitialized = recorderClass.getMethod("isInitialized");
+        getFlightRecorder = recorderClass.getMethod("getFlightRecorder");
+        getRecordings = recorderClass.getMethod("getRecordings");
+        getState = Class.forName("jdk.jfr.Recording").getMethod("getState");
+        Object listener = Proxy.newProxyInstance(listenerClass.getClassLoader(), new Class<?>[]{listenerClass}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "recorderInitialized":
+                case "recordingStateChanged":
+                    updateRecording();
+                    return null;
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "equals":
+                    return proxy == args[0];
+                case "toString":
+                    return "JfrAdapterEvents listener";
+                default:
+                    return null;
+            }
+        });
+        recorderClass.getMethod("addListener", listenerClass).invoke(null, listener);
+        updateRecording();
+    }
+
+    /**
+     * updateRecording checks whether a recording is running, without initializing Flight Recorder if it isn't yet.
+     */
+    private void updateRecording() {
+        if (!Boolean.TRUE.equals(invoke(isInitialized, null))) {
+            recording = false;
+            return;
+        }
+        boolean running = false;
+        for (Object r : (List<?>) invoke(getRecordings, invoke(getFlightRecorder, null))) {
+            running |= "RUNNING".equals(String.valueOf(invoke(getState, r)));
+        }
+        recording = running;
+    }
+
+    @Override
+    public AdapterEvents.Trace begin(PolicyOperation operation, String tableName) {
+        Object event = newEvent(operationFactory);
+        if (event == null) {
+            return AdapterEvents.NO_TRACE;
+        }
+        set(event, OPERATION, operation.name());
+        set(event, TABLE_NAME, tableName);
+        invoke(begin, event);
+        return new OperationTrace(event);
+    }
+
+    @Override
+    public void retried(PolicyOperation operation, String tableName, int attempt, Throwable failure) {
+        Object event = newEvent(retryFactory);
+        if (event == null) {
+            return;
+        }
+        set(event, OPERATION, operation.name());
+        set(event, TABLE_NAME, tableName);
+        set(event, ATTEMPT, attempt);
+        set(event, FAILURE, failure == null ? null : failure.toString());
+        invoke(commit, event);
+    }
+
+    @Override
+    public void failed(String task, String tableName, Throwable failure) {
+        Object event = newEvent(failureFactory);
+        if (event == null) {
+            return;
+        }
+        set(event, TASK, task);
+        set(event, TABLE_NAME, tableName);
+        set(event, TASK_FAILURE, failure == null ? null : failure.toString());
+        invoke(commit, event);
+    }
+
+    /**
+     * OperationTrace collects the rows and batches of an operation into its event, committed by finish().
+     */
+    private final class OperationTrace implements AdapterEvents.Trace {
+        private final Object event;
+        private String ptype;
+        private long rows;
+        private int batches;
+
+        OperationTrace(Object event) {
+            this.event = event;
+        }
+
+        @Override
+        public void setPtype(String ptype) {
+            this.ptype = ptype;
+        }
+
+        @Override
+        public void addRows(long rows) {
+            this.rows += rows;
+        }
+
+        @Override
+        public void addBatch() {
+            batches++;
+        }
+
+        @Override
+        public void finish() {
+            set(event, PTYPE, ptype);
+            set(event, ROWS, rows);
+            set(event, BATCHES, batches);
+            invoke(commit, event);
+        }
+    }
+
+    /**
+     * newEvent returns a new event of the factory, or null when the event is not recorded.
+     * The event is only created while a recording is running, and then still checked, since
+     * the recordings may not enable it.
+     */
+    private Object newEvent(Object factory) {
+        if (!recording) {
+            return null;
+        }
+        Object event = invoke(newEvent, factory);
+        return Boolean.TRUE.equals(invoke(isEnabled, event)) ? event : null;
+    }
+
+    private void set(Object event, int index, Object value) {
+        invoke(set, event, index, value);
+    }
+
+    private static Object invoke(Method method, Object target, Object... args) {
+        try {
+            return method.invoke(target, args);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Failed to record the JFR event.", e);
+        }
+    }
+
+    private static Object annotation(String type, Object value) throws ReflectiveOperationException {
+        Class<?> annotationClass = Class.forName("jdk.jfr." + type);
+        Constructor<?> constructor = Class.forName("jdk.jfr.AnnotationElement").getConstructor(Class.class, Object.class);
+        return constructor.newInstance(annotationClass, value);
+    }
+
+    private static Object field(Class<?> type, String name, String label) throws ReflectiveOperationException {
+        Constructor<?> constructor = Class.forName("jdk.jfr.ValueDescriptor").getConstructor(Class.class, String.class, List.class);
+        return constructor.newInstance(type, name, Collections.singletonList(annotation("Label", label)));
+    }
+}
@@ -0,0 +1,99 @@
+// Copyright 2026 The casbin Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package org.casbin.adapter;
+
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * PgCopy runs COPY FROM STDIN through the copy API of the PostgreSQL JDBC driver.
+ * It is the only class of the adapter linked to the driver, and it is loaded on PostgreSQL only,
+ * so the adapter doesn't need the driver on the classpath of the other databases.
+ */
+final class PgCopy {
+    private PgCopy() {
+    }
+
+    /**
+     * isAvailable checks whether the connection is one of the PostgreSQL JDBC driver.
+     *
+     * @throws NoClassDefFoundError if the driver is not on the classpath.
+     */
+    static boolean isAvailable(Connection connection) throws SQLException {
+        return connection.isWrapperFor(PGConnection.class);
+    }
+
+    /**
+     * copyIn copies ptype, v0..v5 of the lines with the COPY FROM STDIN statement, in the text format of COPY.
+     * The rows are encoded and written one by one, the driver buffering them into the messages of the copy,
+     * so the data of the lines is never held as a whole. The driver sets the client encoding to UTF-8.
+     *
+     * @return the number of copied rows.
+     */
+    static long copyIn(Connection connection, String sql, List<CasbinRule> lines) throws SQLException {
+        CopyIn copy = connection.unwrap(PGConnection.class).getCopyAPI().copyIn(sql);
+        try {
+            StringBuilder row = new StringBuilder();
+            for (CasbinRule line : lines) {
+                row.setLength(0);
+                appendRow(row, line.toStringArray());
+                byte[] bytes = row.toString().getBytes(StandardCharsets.UTF_8);
+                copy.writeToCopy(bytes, 0, bytes.length);
+            }
+            return copy.endCopy();
+        } finally {
+            if (copy.isActive()) {
+                copy.cancelCopy();
+            }
+        }
+    }
+
+    private static void appendRow(StringBuilder row, String[] fields) {
+        for (int i = 0; i < fields.length; i++) {
+            if (i > 0) {
+                row.append('\t');
+            }
+            if (fields[i] == null) {
+                row.append("\\N");
+                continue;
+            }
+            for (int j = 0; j < fields[i].length(); j++) {
+                char c = fields[i].charAt(j);
+                switch (c) {
+                    case '\\':
+                        row.append("\\\\");
+                        break;
+                    case '\t':
+                        row.append("\\t");
+                        break;
+                    case '\n':
+                        row.append("\\n");
+                        break;
+                    case '\r':
+                        row.append("\\r");
+                        break;
+                    default:
+                        row.append(c);
+                }
+            }
+        }
+        row.append('\n');
+    }
+}
@@ -0,0 +1,258 @@
+// Copyright 2026 The casbin Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package org.casbin.adapter;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * PolicyDump is the binary format of JDBCBaseAdapter.exportPolicies and importPolicies.
+ * <p>
+ * The dump starts with the magic "CBPD" and the format version, followed by blocks of rules.
+ * A block is the varint number of rules, the varint length of the payload, the payload and the
+ * CRC32 of the payload. The payload holds the 7 fields ptype, v0..v5 of each rule as varint
+ * references into the dictionary of the block: 0 is NULL, and the next unused reference
+ * introduces a new string, followed by its varint length and UTF-8 bytes. The dictionary starts
+ * empty in every block, so neither side holds more than a block of strings. An empty block ends the
+ * dump, followed by the varint total number of rules.
+ */
+final class PolicyDump {
+    private static final byte[] MAGIC = {'C', 'B', 'P', 'D'};
+    private static final int VERSION = 1;
+    private static final int MAX_BLOCK_LENGTH = 64 * 1024 * 1024;
+    private static final int RULE_FIELDS = 7;
+
+    private PolicyDump() {
+    }
+
+    /**
+     * Writer writes the rules in blocks, each block being written once complete.
+     */
+    static class Writer {
+        private final DataOutputStream out;
+        private final Map<String, Integer> dictionary = new HashMap<>();
+        private final ByteArrayOutputStream block = new ByteArrayOutputStream();
+        private final int blockSize;
+        private int blockRows;
+        private long total;
+
+        Writer(OutputStream out, int blockSize) throws IOException {
+            this.out = new DataOutputStream(new BufferedOutputStream(out));
+            this.blockSize = blockSize;
+            this.out.write(MAGIC);
+            writeVarLong(this.out, VERSION);
+        }
+
+        void write(CasbinRule line) throws IOException {
+            for (String field : line.toStringArray()) {
+                writeField(field);
+            }
+            total++;
+            if (++blockRows == blockSize) {
+                flushBlock();
+            }
+        }
+
+        /**
+         * finish writes the last block and the end of the dump. The stream is flushed, not closed.
+         */
+        void finish() throws IOException {
+            flushBlock();
+            writeVarLong(out, 0);
+            writeVarLong(out, total);
+            out.flush();
+        }
+
+        long getTotal() {
+            return total;
+        }
+
+        private void writeField(String field) throws IOException {
+            if (field == null) {
+                writeVarLong(block, 0);
+                return;
+            }
+            Integer ref = dictionary.get(field);
+            if (ref != null) {
+                writeVarLong(block, ref);
+                return;
+            }
+            ref = dictionary.size() + 1;
+            dictionary.put(field, ref);
+            byte[] bytes = field.getBytes(StandardCharsets.UTF_8);
+            writeVarLong(block, ref);
+            writeVarLong(block, bytes.length);
+            block.write(bytes);
+        }
+
+        private void flushBlock() throws IOException {
+            if (blockRows == 0) {
+                return;
+            }
+            CRC32 crc = new CRC32();
+            crc.update(block.toByteArray());
+            writeVarLong(out, blockRows);
+            writeVarLong(out, block.size());
+            block.writeTo(out);
+            out.writeInt((int) crc.getValue());
+            block.reset();
+            blockRows = 0;
+            // The dictionary is per block, so its memory is bounded by the block size, not by the table.
+            dictionary.clear();
+        }
+    }
+
+    /**
+     * Reader reads the rules block by block, checking the checksum of each block before returning it.
+     */
+    static class Reader {
+        private final DataInputStream in;
+        private final List<String> dictionary = new ArrayList<>();
+        private boolean started;
+        private boolean finished;
+        private long total;
+        private int blocks;
+
+        Reader(InputStream in) {
+            this.in = new DataInputStream(new BufferedInputStream(in));
+        }
+
+        boolean isStarted() {
+            return started;
+        }
+
+        /**
+         * nextBlock returns the rules of the next block, or null at the end of the dump.
+         */
+        List<CasbinRule> nextBlock() throws IOException {
+            if (!started) {
+                started = true;
+                readHeader();
+            }
+            if (finished) {
+                return null;
+            }
+
+            long rows = readVarLong(in);
+            if (rows == 0) {
+                finished = true;
+                long expected = readVarLong(in);
+                if (expected != total) {
+                    throw new IOException(String.format("Invalid policy dump, %d rules read, expect %d rules", total, expected));
+                }
+                return null;
+            }
+            long length = readVarLong(in);
+            if (length > MAX_BLOCK_LENGTH) {
+                throw new IOException("Invalid policy dump, block " + blocks + " is too long: " + length);
+            }
+            // Every field takes at least one byte, so the row count is bounded by the length before anything is sized from it.
+            if (rows > length / RULE_FIELDS) {
+                throw new IOException(String.format("Invalid policy dump, block %d can't hold %d rules in %d bytes", blocks, rows, length));
+            }
+            byte[] payload = new byte[(int) length];
+            in.readFully(payload);
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+            if ((int) crc.getValue() != in.readInt()) {
+                throw new IOException("Invalid policy dump, checksum mismatch in block " + blocks);
+            }
+            blocks++;
+
+            DataInputStream block = new DataInputStream(new ByteArrayInputStream(payload));
+            dictionary.clear();
+            List<CasbinRule> lines = new ArrayList<>((int) rows);
+            for (int i = 0; i < rows; i++) {
+                CasbinRule line = new CasbinRule();
+                line.ptype = readField(block);
+                line.v0 = readField(block);
+                line.v1 = readField(block);
+                line.v2 = readField(block);
+                line.v3 = readField(block);
+                line.v4 = readField(block);
+                line.v5 = readField(block);
+                if (line.ptype == null) {
+                    throw new IOException("Invalid policy dump, rule without ptype in block " + (blocks - 1));
+                }
+                lines.add(line);
+            }
+            if (block.available() != 0) {
+                throw new IOException("Invalid policy dump, trailing bytes in block " + (blocks - 1));
+            }
+            total += rows;
+            return lines;
+        }
+
+        private void readHeader() throws IOException {
+            byte[] magic = new byte[MAGIC.length];
+            in.readFully(magic);
+            if (!Arrays.equals(magic, MAGIC)) {
+                throw new IOException("Invalid policy dump, bad magic number");
+            }
+            long version = readVarLong(in);
+            if (version != VERSION) {
+                throw new IOException("Unsupported policy dump version: " + version);
+            }
+        }
+
+        private String readField(DataInputStream block) throws IOException {
+            long ref = readVarLong(block);
+            if (ref == 0) {
+                return null;
+            }
+            if (ref <= dictionary.size()) {
+                return dictionary.get((int) ref - 1);
+            }
+            if (ref != dictionary.size() + 1) {
+                throw new IOException("Invalid policy dump, unknown string reference " + ref);
+            }
+            long length = readVarLong(block);
+            if (length > block.available()) {
+                throw new IOException("Invalid policy dump, string of " + length + " bytes past the end of block " + (blocks - 1));
+            }
+            byte[] bytes = new byte[(int) length];
+            block.readFully(bytes);
+            String value = new String(bytes, StandardCharsets.UTF_8);
+            dictionary.add(value);
+            return value;
+        }
+    }
+
+    private static void writeVarLong(OutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static long readVarLong(DataInputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Invalid policy dump, malformed varint");
+    }
+}
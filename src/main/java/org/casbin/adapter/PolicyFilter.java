@@ -0,0 +1,65 @@
+// Copyright 2026 The casbin Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package org.casbin.adapter;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * PolicyFilter selects the rules of a ptype by the values of consecutive fields, like the arguments
+ * of removeFilteredPolicy, for JDBCBaseAdapter.removeFilteredPolicies.
+ *
+ * <pre>
+ * adapter.removeFilteredPolicies(Arrays.asList(
+ *         new PolicyFilter("p", 0, "alice"),
+ *         new PolicyFilter("g", 0, "alice")));
+ * </pre>
+ */
+public final class PolicyFilter {
+    private final String ptype;
+    private final int fieldIndex;
+    private final List<String> fieldValues;
+
+    /**
+     * PolicyFilter is the constructor for PolicyFilter.
+     *
+     * @param ptype       the policy type, like "p" or "g".
+     * @param fieldIndex  the index of the first filtered field, 0 for v0.
+     * @param fieldValues the values of the fields from fieldIndex, "" matches any value.
+     */
+    public PolicyFilter(String ptype, int fieldIndex, String... fieldValues) {
+        this.ptype = ptype;
+        this.fieldIndex = fieldIndex;
+        this.fieldValues = Collections.unmodifiableList(Arrays.asList(fieldValues.clone()));
+    }
+
+    public String getPtype() {
+        return ptype;
+    }
+
+    public int getFieldIndex() {
+        return fieldIndex;
+    }
+
+    public List<String> getFieldValues() {
+        return fieldValues;
+    }
+
+    @Override
+    public String toString() {
+        return ptype + "[" + fieldIndex + "]=" + fieldValues;
+    }
+}
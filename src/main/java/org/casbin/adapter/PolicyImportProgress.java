@@ -0,0 +1,66 @@
+// Copyright 2026 The casbin Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.casbin.adapter;
+
+import java.time.Duration;
+
+/**
+ * PolicyImportProgress reports the progress of JDBCBaseAdapter.addPolicies from an Iterator or a Stream,
+ * after every committed chunk and once the import is complete.
+ */
+public final class PolicyImportProgress {
+    private final long rows;
+    private final long chunks;
+    private final Duration elapsed;
+
+    PolicyImportProgress(long rows, long chunks, Duration elapsed) {
+        this.rows = rows;
+        this.chunks = chunks;
+        this.elapsed = elapsed;
+    }
+
+    /**
+     * getRows returns the number of rules written and committed so far.
+     */
+    public long getRows() {
+        return rows;
+    }
+
+    /**
+     * getChunks returns the number of chunks committed so far.
+     */
+    public long getChunks() {
+        return chunks;
+    }
+
+    /**
+     * getElapsed returns the time spent since the start of the import.
+     */
+    public Duration getElapsed() {
+        return elapsed;
+    }
+
+    /**
+     * getRowsPerSecond returns the average throughput of the import so far.
+     */
+    public double getRowsPerSecond() {
+        long nanos = elapsed.toNanos();
+        return nanos == 0 ? 0 : rows * 1_000_000_000.0 / nanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d rows in %d chunks, %.0f rows/s", rows, chunks, getRowsPerSecond());
+    }
+}
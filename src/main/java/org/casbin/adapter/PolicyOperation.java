@@ -0,0 +1,30 @@
+// Copyright 2026 The casbin Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package org.casbin.adapter;
+
+/**
+ * PolicyOperation identifies the adapter operation a statement is executed for,
+ * so that per-operation settings like query timeouts can be applied.
+ */
+public enum PolicyOperation {
+    LOAD_POLICY,
+    LOAD_FILTERED_POLICY,
+    QUERY_POLICY,
+    SAVE_POLICY,
+    ADD_POLICY,
+    REMOVE_POLICY,
+    REMOVE_FILTERED_POLICY,
+    UPDATE_POLICY
+}
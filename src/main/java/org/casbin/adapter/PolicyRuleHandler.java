@@ -0,0 +1,33 @@
+// Copyright 2026 The casbin Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package org.casbin.adapter;
+
+import java.util.List;
+
+/**
+ * PolicyRuleHandler receives the rules streamed by JDBCAdapter.streamPolicies, one at a time.
+ * The next rules are only read once the handler returns, so a slow handler slows the reading down.
+ */
+@FunctionalInterface
+public interface PolicyRuleHandler {
+    /**
+     * handle processes a rule.
+     *
+     * @param ptype the policy type, like "p" or "g".
+     * @param rule  the rule, without the ptype.
+     * @return true to receive the next rule, false to stop the stream.
+     */
+    boolean handle(String ptype, List<String> rule);
+}
@@ -0,0 +1,90 @@
+// Copyright 2026 The casbin Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package org.casbin.adapter;
+
+import org.casbin.jcasbin.model.Model;
+import org.casbin.jcasbin.persist.Helper;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * PolicySnapshot is an immutable copy of the policy rules read once from the storage,
+ * shared by the models it is loaded into. The rules are kept as escaped policy lines and
+ * parsed into every model like loadPolicy does, so each model gets its own rule lists:
+ * the snapshot saves the reads of the storage, not the heap taken by the rules of the models.
+ * <p>
+ * A snapshot is reference-counted: every PolicySnapshotLoader.acquire() must be paired with
+ * close(), and the rules are dropped once the last reference is released.
+ */
+public final class PolicySnapshot implements AutoCloseable {
+    private final AtomicInteger references = new AtomicInteger(1);
+    private volatile String[] lines;
+
+    PolicySnapshot(List<String> lines) {
+        this.lines = lines.toArray(new String[0]);
+    }
+
+    /**
+     * loadInto adds the rules of the snapshot to the model, without reading the storage.
+     * The rules of the ptypes not defined by the model are skipped.
+     */
+    public void loadInto(Model model) {
+        String[] lines = this.lines;
+        if (lines == null) {
+            throw new IllegalStateException("The policy snapshot is released.");
+        }
+        for (String line : lines) {
+            Helper.loadPolicyLine(line, model);
+        }
+    }
+
+    /**
+     * size returns the number of rules of the snapshot.
+     */
+    public int size() {
+        String[] lines = this.lines;
+        return lines == null ? 0 : lines.length;
+    }
+
+    /**
+     * close releases a reference to the snapshot.
+     */
+    @Override
+    public void close() {
+        release();
+    }
+
+    boolean retain() {
+        int count;
+        do {
+            count = references.get();
+            if (count == 0) {
+                return false;
+            }
+        } while (!references.compareAndSet(count, count + 1));
+        return true;
+    }
+
+    void release() {
+        int count = references.decrementAndGet();
+        if (count == 0) {
+            lines = null;
+        } else if (count < 0) {
+            references.incrementAndGet();
+            throw new IllegalStateException("The policy snapshot is already released.");
+        }
+    }
+}
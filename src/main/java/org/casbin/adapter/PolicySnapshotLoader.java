@@ -0,0 +1,151 @@
+// Copyright 2026 The casbin Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package org.casbin.adapter;
+
+import org.casbin.jcasbin.model.Model;
+import org.casbin.jcasbin.persist.Adapter;
+import org.casbin.jcasbin.persist.BatchAdapter;
+import org.casbin.jcasbin.persist.UpdatableAdapter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * PolicySnapshotLoader shares one PolicySnapshot of the table between the enforcers of a JVM.
+ * The table is read once, and every loadPolicy populates the model from the current snapshot
+ * until refresh() reads the table again. It can be passed as the adapter of every enforcer:
+ * loads come from the snapshot, and changes are written through the underlying adapter.
+ * A successful write through the loader drops the snapshot, so the next load reads the table again
+ * and sees it. The changes made around the loader, by the adapter itself or by other nodes, are
+ * only seen after refresh().
+ * The snapshot shares the read of the table, not the rules of the models: each model still parses
+ * its own copy of the rules, see PolicySnapshot.
+ * The loader serializes its own reads, but the adapter isn't thread-safe: it must not be used
+ * by another thread while a snapshot is read.
+ *
+ * <pre>
+ * PolicySnapshotLoader loader = new PolicySnapshotLoader(adapter);
+ * Enforcer e1 = new Enforcer("model1.conf", loader);
+ * Enforcer e2 = new Enforcer("model2.conf", loader);
+ * </pre>
+ */
+public class PolicySnapshotLoader implements Adapter, BatchAdapter, UpdatableAdapter {
+    private final JDBCAdapter adapter;
+    private PolicySnapshot current;
+
+    /**
+     * PolicySnapshotLoader is the constructor for PolicySnapshotLoader.
+     * The table is read on the first load.
+     *
+     * @param adapter the adapter reading the table.
+     */
+    public PolicySnapshotLoader(JDBCAdapter adapter) {
+        this.adapter = adapter;
+    }
+
+    /**
+     * acquire returns the current snapshot, reading the table if there is none yet.
+     * The caller must close the snapshot once done with it.
+     */
+    public synchronized PolicySnapshot acquire() {
+        if (current == null) {
+            current = read();
+        }
+        current.retain();
+        return current;
+    }
+
+    /**
+     * refresh reads the table into a new snapshot used by the next loads.
+     * The previous snapshot is dropped once its last holder closes it.
+     */
+    public synchronized void refresh() {
+        PolicySnapshot snapshot = read();
+        if (current != null) {
+            current.release();
+        }
+        current = snapshot;
+    }
+
+    /**
+     * loadPolicy loads the rules of the current snapshot into the model.
+     */
+    @Override
+    public void loadPolicy(Model model) {
+        try (PolicySnapshot snapshot = acquire()) {
+            snapshot.loadInto(model);
+        }
+    }
+
+    @Override
+    public void savePolicy(Model model) {
+        adapter.savePolicy(model);
+        invalidate();
+    }
+
+    @Override
+    public void addPolicy(String sec, String ptype, List<String> rule) {
+        adapter.addPolicy(sec, ptype, rule);
+        invalidate();
+    }
+
+    @Override
+    public void removePolicy(String sec, String ptype, List<String> rule) {
+        adapter.removePolicy(sec, ptype, rule);
+        invalidate();
+    }
+
+    @Override
+    public void removeFilteredPolicy(String sec, String ptype, int fieldIndex, String... fieldValues) {
+        adapter.removeFilteredPolicy(sec, ptype, fieldIndex, fieldValues);
+        invalidate();
+    }
+
+    @Override
+    public void addPolicies(String sec, String ptype, List<List<String>> rules) {
+        adapter.addPolicies(sec, ptype, rules);
+        invalidate();
+    }
+
+    @Override
+    public void removePolicies(String sec, String ptype, List<List<String>> rules) {
+        adapter.removePolicies(sec, ptype, rules);
+        invalidate();
+    }
+
+    @Override
+    public void updatePolicy(String sec, String ptype, List<String> oldRule, List<String> newRule) {
+        adapter.updatePolicy(sec, ptype, oldRule, newRule);
+        invalidate();
+    }
+
+    /**
+     * invalidate drops the current snapshot after a write, so the next load reads the table again.
+     * The dropped snapshot stays readable by its holders until they close it.
+     */
+    private synchronized void invalidate() {
+        if (current != null) {
+            current.release();
+            current = null;
+        }
+    }
+
+    // Called with the lock of the loader held by acquire() and refresh().
+    private PolicySnapshot read() {
+        List<String> lines = new ArrayList<>();
+        adapter.loadRules(line -> lines.add(adapter.policyLineText(line)));
+        return new PolicySnapshot(lines);
+    }
+}
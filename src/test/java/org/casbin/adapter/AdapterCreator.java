@@ -38,12 +38,7 @@ class MySQLAdapterCreator implements AdapterCreator {
 
     @Override
     public JDBCAdapter createViaDataSource() throws Exception {
-        MysqlDataSource dataSource = new MysqlDataSource();
-        dataSource.setURL(url);
-        dataSource.setUser(username);
-        dataSource.setPassword(password);
-
-        return new JDBCAdapter(dataSource);
+        return new JDBCAdapter(getDataSource());
     }
 
     public JDBCAdapter create(boolean removePolicyFailed, String tableName, boolean autoCreateTable) throws Exception {
@@ -51,12 +46,19 @@ class MySQLAdapterCreator implements AdapterCreator {
     }
 
     public JDBCAdapter createViaDataSource(boolean removePolicyFailed, String tableName, boolean autoCreateTable) throws Exception {
+        return new JDBCAdapter(getDataSource(), removePolicyFailed, tableName, autoCreateTable);
+    }
+
+    public MysqlDataSource getDataSource() {
         MysqlDataSource dataSource = new MysqlDataSource();
         dataSource.setURL(url);
         dataSource.setUser(username);
         dataSource.setPassword(password);
+        return dataSource;
+    }
 
-        return new JDBCAdapter(dataSource, removePolicyFailed, tableName, autoCreateTable);
+    public JDBCAdapter createDictionaryAdapter(String tableName) throws Exception {
+        return new JDBCDictionaryAdapter(driver, url, username, password, false, tableName, true);
     }
 }
 
@@ -93,6 +95,10 @@ class PgAdapterCreator implements AdapterCreator {
         return new JDBCAdapter(driver, url, username, password);
     }
 
+    public JDBCAdapter create(boolean removePolicyFailed, String tableName, boolean autoCreateTable) throws Exception {
+        return new JDBCAdapter(driver, url, username, password, removePolicyFailed, tableName, autoCreateTable);
+    }
+
     @Override
     public JDBCAdapter createViaDataSource() throws Exception {
         PGSimpleDataSource dataSource = new PGSimpleDataSource();
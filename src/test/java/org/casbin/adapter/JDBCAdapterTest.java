@@ -14,16 +14,33 @@
 
 package org.casbin.adapter;
 
+import com.mysql.cj.jdbc.MysqlDataSource;
 import org.casbin.jcasbin.exception.CasbinAdapterException;
 import org.casbin.jcasbin.main.Enforcer;
+import org.casbin.jcasbin.model.Model;
 import org.casbin.jcasbin.persist.file_adapter.FilteredAdapter;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
 
 import static java.util.Arrays.asList;
 import static org.casbin.adapter.JDBCAdapterTestSets.*;
@@ -290,4 +307,859 @@ public class JDBCAdapterTest {
                 asList("alice", "data2", "read")));
 
     }
+
+    @Test
+    public void testQueryTimeout() throws Exception {
+        JDBCAdapter adapter = new MySQLAdapterCreator().create();
+        adapter.setQueryTimeout(30);
+        adapter.setQueryTimeout(PolicyOperation.LOAD_POLICY, 5);
+        Assert.assertEquals(5, adapter.getQueryTimeout(PolicyOperation.LOAD_POLICY));
+        Assert.assertEquals(30, adapter.getQueryTimeout(PolicyOperation.SAVE_POLICY));
+
+        Enforcer e = new Enforcer("examples/rbac_model.conf", "examples/rbac_policy.csv");
+        adapter.savePolicy(e.getModel());
+
+        e = new Enforcer("examples/rbac_model.conf", adapter);
+        testGetPolicy(e, asList(
+                asList("alice", "data1", "read"),
+                asList("bob", "data2", "write"),
+                asList("data2_admin", "data2", "read"),
+                asList("data2_admin", "data2", "write")));
+
+        // Nothing is in flight, so cancel is a no-op.
+        adapter.cancel();
+        adapter.close();
+    }
+
+    @Test
+    public void testQueryTimeoutAndCancel() throws Exception {
+        JDBCAdapter adapter = new MySQLAdapterCreator().create(false, "casbin_rule_slow", true);
+        adapter.savePolicy(new Enforcer("examples/rbac_model.conf", "examples/rbac_policy.csv").getModel());
+        adapter.setQueryTimeout(PolicyOperation.LOAD_POLICY, 1);
+        Model model = new Enforcer("examples/rbac_model.conf").getModel();
+
+        // A write lock held by another session blocks the loads until they time out or are cancelled.
+        try (Connection locker = adapter.dataSource.getConnection(); Statement stmt = locker.createStatement()) {
+            stmt.execute("LOCK TABLES casbin_rule_slow WRITE");
+            try {
+                long start = System.nanoTime();
+                try {
+                    adapter.loadPolicy(model);
+                    fail("The load should time out.");
+                } catch (CasbinAdapterTimeoutException e) {
+                    Assert.assertEquals(PolicyOperation.LOAD_POLICY, e.getOperation());
+                }
+                // A retry would wait at least one more second.
+                Assert.assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(1900));
+
+                adapter.setQueryTimeout(PolicyOperation.LOAD_POLICY, 30);
+                ExecutorService executor = Executors.newSingleThreadExecutor();
+                Future<?> load = executor.submit(() -> adapter.loadPolicy(model));
+                Thread.sleep(500);
+                adapter.cancel();
+                try {
+                    load.get(5, TimeUnit.SECONDS);
+                    fail("The load should be cancelled.");
+                } catch (ExecutionException e) {
+                    Assert.assertTrue(e.getCause() instanceof CasbinAdapterCancelledException);
+                }
+                executor.shutdown();
+            } finally {
+                stmt.execute("UNLOCK TABLES");
+            }
+        }
+
+        // The next load is not affected by the cancellation.
+        adapter.loadPolicy(model);
+        Assert.assertEquals(4, model.model.get("p").get("p").policy.size());
+        adapter.close();
+    }
+
+    @Test
+    public void testCancelLoadWhileQuerying() throws Exception {
+        JDBCAdapter adapter = new MySQLAdapterCreator().create(false, "casbin_rule_slow", true);
+        adapter.savePolicy(new Enforcer("examples/rbac_model.conf", "examples/rbac_policy.csv").getModel());
+        Model model = new Enforcer("examples/rbac_model.conf").getModel();
+
+        try (Connection locker = adapter.dataSource.getConnection(); Statement stmt = locker.createStatement()) {
+            stmt.execute("LOCK TABLES casbin_rule_slow WRITE");
+            ExecutorService executor = Executors.newFixedThreadPool(2);
+            try {
+                Future<?> load = executor.submit(() -> adapter.loadPolicy(model));
+                Thread.sleep(500);
+                // The query starting during the load neither resets the cancel request nor is cancelled by it.
+                Future<Boolean> query = executor.submit(() -> adapter.hasPolicy("p", asList("alice", "data1", "read")));
+                Thread.sleep(500);
+                adapter.cancel();
+                try {
+                    load.get(5, TimeUnit.SECONDS);
+                    fail("The load should be cancelled.");
+                } catch (ExecutionException e) {
+                    Assert.assertTrue(e.getCause() instanceof CasbinAdapterCancelledException);
+                }
+                stmt.execute("UNLOCK TABLES");
+                Assert.assertTrue(query.get(5, TimeUnit.SECONDS));
+            } finally {
+                stmt.execute("UNLOCK TABLES");
+                executor.shutdown();
+            }
+        }
+        adapter.close();
+    }
+
+    @Test
+    public void testDictionaryAdapter() throws Exception {
+        // The dictionary layout creates a view named after the table, so it can't share casbin_rule.
+        JDBCAdapter adapter = new MySQLAdapterCreator().createDictionaryAdapter("casbin_rule_compact");
+
+        JDBCAdapterTestSets.testAdapter(adapter);
+        JDBCAdapterTestSets.testAddAndRemovePolicy(adapter);
+
+        adapter.removeFilteredPolicy("p", "p", 0, "data2_admin");
+        Enforcer e = new Enforcer("examples/rbac_model.conf", adapter);
+        testGetPolicy(e, asList(
+                asList("alice", "data1", "read"),
+                asList("bob", "data2", "write")));
+
+        adapter.setLoadPageSize(1);
+        e = new Enforcer("examples/rbac_model.conf", adapter);
+        testGetPolicy(e, asList(
+                asList("alice", "data1", "read"),
+                asList("bob", "data2", "write")));
+        adapter.setLoadPageSize(0);
+
+        adapter.addPolicies("p", "p", asList(asList("alice", "data1", "read"), asList("alice", "data1", "read")));
+        Assert.assertEquals(2, adapter.deduplicatePolicies());
+        Assert.assertEquals(1, adapter.countPolicies("p", 0, "alice"));
+
+        // Values differing only in case get their own dictionary entries.
+        adapter.addPolicy("p", "p", asList("Alice", "data1", "read"));
+        Assert.assertEquals(1, adapter.countPolicies("p", 0, "Alice"));
+        Assert.assertEquals(1, adapter.countPolicies("p", 0, "alice"));
+        adapter.removePolicy("p", "p", asList("Alice", "data1", "read"));
+        Assert.assertTrue(adapter.hasPolicy("p", asList("alice", "data1", "read")));
+        try {
+            adapter.setUniquePolicies(true);
+            fail("The dictionary adapter has no unique key.");
+        } catch (IllegalArgumentException ignored) {
+        }
+        try {
+            adapter.setShadowSave(true);
+            fail("The dictionary adapter can't swap the view.");
+        } catch (IllegalArgumentException ignored) {
+        }
+        adapter.close();
+
+        // The schema options are set before the constructor migrates the tables.
+        adapter = new JDBCDictionaryAdapter(new MySQLAdapterCreator().getDataSource(), false, "casbin_rule_compact",
+                a -> a.setChangeTracking(true));
+        long version = adapter.getPolicyVersion();
+        adapter.addPolicy("p", "p", asList("cathy", "data1", "read"));
+        adapter.removePolicy("p", "p", asList("cathy", "data1", "read"));
+        Assert.assertEquals(version + 2, adapter.getPolicyVersion());
+
+        // The fingerprint hashes the encoded ids, so an in-place update of casbin_rule_enc is detected.
+        adapter.addPolicy("p", "p", asList("cathy", "data1", "read"));
+        Model model = new Enforcer("examples/rbac_model.conf").getModel();
+        Assert.assertTrue(adapter.loadPolicyIfChanged(model));
+        try (Connection connection = adapter.dataSource.getConnection(); Statement stmt = connection.createStatement()) {
+            stmt.executeUpdate("UPDATE casbin_rule_compact_enc SET v1 = v2 WHERE id = (SELECT id FROM " +
+                    "(SELECT MAX(id) AS id FROM casbin_rule_compact_enc) AS newest)");
+        }
+        Assert.assertTrue(adapter.loadPolicyIfChanged(model));
+        Assert.assertTrue(adapter.hasPolicy("p", asList("cathy", "read", "read")));
+        adapter.removePolicy("p", "p", asList("cathy", "read", "read"));
+        adapter.close();
+    }
+
+    @Test
+    public void testUniquePolicies() throws Exception {
+        JDBCAdapter adapter = new MySQLAdapterCreator().create(false, "casbin_rule_unique_test", false);
+        adapter.setUniquePolicies(true);
+        adapter.migrate();
+        adapter.removeFilteredPolicy("p", "p", 0, "cathy");
+
+        adapter.addPolicies("p", "p", asList(asList("cathy", "data1", "read"), asList("cathy", "data1", "read")));
+        Assert.assertEquals(0, adapter.deduplicatePolicies());
+
+        // Adding an existing rule is a no-op instead of a duplicate row.
+        adapter.addPolicy("p", "p", asList("cathy", "data1", "read"));
+        Enforcer e = new Enforcer("examples/rbac_model.conf", adapter);
+        testGetPolicy(e, asList(asList("cathy", "data1", "read")));
+
+        adapter.removePolicy("p", "p", asList("cathy", "data1", "read"));
+        e = new Enforcer("examples/rbac_model.conf", adapter);
+        testGetPolicy(e, asList());
+
+        // Rules differing only in case are distinct rules, neither merged by the key nor by deduplicatePolicies.
+        adapter.addPolicies("p", "p", asList(asList("cathy", "data1", "read"), asList("Cathy", "data1", "read")));
+        adapter.addPolicy("p", "p", asList("CATHY", "data1", "read"));
+        Assert.assertEquals(0, adapter.deduplicatePolicies());
+        e = new Enforcer("examples/rbac_model.conf", adapter);
+        testGetPolicy(e, asList(asList("cathy", "data1", "read"), asList("Cathy", "data1", "read"), asList("CATHY", "data1", "read")));
+        adapter.removePolicies("p", "p", asList(asList("cathy", "data1", "read"), asList("Cathy", "data1", "read"), asList("CATHY", "data1", "read")));
+
+        adapter.close();
+    }
+
+    @Test
+    public void testLoadPolicyInPages() throws Exception {
+        JDBCAdapter adapter = new MySQLAdapterCreator().create();
+        Enforcer e = new Enforcer("examples/rbac_model.conf", "examples/rbac_policy.csv");
+        adapter.savePolicy(e.getModel());
+
+        // Page sizes below, equal to and above the number of rules.
+        for (int pageSize : new int[]{1, 5, 100}) {
+            adapter.setLoadPageSize(pageSize);
+            e = new Enforcer("examples/rbac_model.conf", adapter);
+            testGetPolicy(e, asList(
+                    asList("alice", "data1", "read"),
+                    asList("bob", "data2", "write"),
+                    asList("data2_admin", "data2", "read"),
+                    asList("data2_admin", "data2", "write")));
+        }
+
+        adapter.close();
+    }
+
+    @Test
+    public void testLoadJDBCFilteredPolicy() throws Exception {
+        JDBCAdapter adapter = new MySQLAdapterCreator().create();
+        Enforcer e = new Enforcer("examples/rbac_with_domains_model.conf", "examples/rbac_with_domains_policy.csv");
+        adapter.savePolicy(e.getModel());
+
+        JDBCFilter f = new JDBCFilter();
+        f.clause("p").in(0, "admin", "nobody").prefix(1, "domain1");
+        f.clause("g", "g2").in(2, "domain2");
+
+        e.clearPolicy();
+        adapter.loadFilteredPolicy(e.getModel(), f);
+        Assert.assertTrue(adapter.isFiltered());
+
+        testHasPolicy(e, asList("admin", "domain1", "data1", "read"), true);
+        testHasPolicy(e, asList("admin", "domain2", "data2", "read"), false);
+        Assert.assertEquals(asList(asList("bob", "admin", "domain2")), e.getGroupingPolicy());
+
+        adapter.close();
+    }
+
+    @Test
+    public void testJDBCFilterEscapesPrefixes() {
+        JDBCFilter f = new JDBCFilter();
+        f.clause("p").prefix(1, "50%_off[1]!");
+
+        // [ starts a character class on SQL Server only, and Oracle rejects escaping anything else.
+        List<String> params = new ArrayList<>();
+        f.toSql(params, "Microsoft SQL Server");
+        Assert.assertEquals(asList("p", "50!%!_off![1]!!%"), params);
+        params.clear();
+        f.toSql(params, "Oracle");
+        Assert.assertEquals(asList("p", "50!%!_off[1]!!%"), params);
+    }
+
+    @Test
+    public void testQueryPolicyWithoutModel() throws Exception {
+        JDBCAdapter adapter = new MySQLAdapterCreator().create();
+        Enforcer e = new Enforcer("examples/rbac_with_domains_model.conf", "examples/rbac_with_domains_policy.csv");
+        adapter.savePolicy(e.getModel());
+
+        Assert.assertTrue(adapter.hasPolicy("p", asList("admin", "domain1", "data1", "read")));
+        Assert.assertFalse(adapter.hasPolicy("p", asList("admin", "domain1", "data1")));
+
+        Assert.assertEquals(2, adapter.countPolicies("p", 1, "domain1"));
+        Assert.assertEquals(2, adapter.countPolicies("p", 0, "admin", "", "data2"));
+
+        List<List<String>> rules = new ArrayList<>();
+        adapter.getFilteredPolicy("p", 3, 0, "admin").forEachRemaining(rules::add);
+        Assert.assertEquals(4, rules.size());
+        Assert.assertEquals(asList("admin", "domain1", "data1", "read"), rules.get(0));
+
+        adapter.close();
+    }
+
+    @Test
+    public void testLoadSubjectPolicy() throws Exception {
+        JDBCAdapter adapter = new MySQLAdapterCreator().create();
+        Enforcer e = new Enforcer("examples/rbac_with_domains_model.conf", "examples/rbac_with_domains_policy.csv");
+        adapter.savePolicy(e.getModel());
+
+        e.clearPolicy();
+        adapter.loadSubjectPolicy(e.getModel(), "alice", "domain1");
+        Assert.assertTrue(adapter.isFiltered());
+        testGetPolicy(e, asList(
+                asList("admin", "domain1", "data1", "read"),
+                asList("admin", "domain1", "data1", "write")));
+        Assert.assertEquals(asList(asList("alice", "admin", "domain1")), e.getGroupingPolicy());
+
+        // A role reached through several paths, and through a cycle, brings its rules once.
+        e = new Enforcer("examples/rbac_model.conf");
+        e.addGroupingPolicies(asList(asList("dave", "left"), asList("dave", "right"), asList("left", "top"),
+                asList("right", "top"), asList("top", "left")));
+        e.addPolicy("top", "data1", "read");
+        adapter.savePolicy(e.getModel());
+        e.clearPolicy();
+        adapter.loadSubjectPolicy(e.getModel(), "dave");
+        testGetPolicy(e, asList(asList("top", "data1", "read")));
+        Assert.assertEquals(5, e.getGroupingPolicy().size());
+
+        adapter.close();
+    }
+
+    @Test
+    public void testWatcher() throws Exception {
+        JDBCAdapter untracked = new MySQLAdapterCreator().create(false, "casbin_rule_watched", false);
+        try {
+            new JDBCWatcher(untracked);
+            fail("Should have thrown IllegalArgumentException");
+        } catch (IllegalArgumentException ignored) {
+        }
+        untracked.close();
+
+        JDBCAdapter adapter = new MySQLAdapterCreator().create(false, "casbin_rule_watched", false);
+        adapter.setChangeTracking(true);
+        adapter.migrate();
+        JDBCAdapter otherNode = new MySQLAdapterCreator().create(false, "casbin_rule_watched", false);
+        otherNode.setChangeTracking(true);
+
+        List<String> updates = new CopyOnWriteArrayList<>();
+        JDBCWatcher watcher = new JDBCWatcher(adapter, java.time.Duration.ofMillis(100));
+        watcher.setUpdateCallback(updates::add);
+
+        // The changes of the node itself don't trigger the callback.
+        long version = adapter.getPolicyVersion();
+        adapter.addPolicy("p", "p", asList("cathy", "data1", "read"));
+        adapter.removePolicy("p", "p", asList("cathy", "data1", "read"));
+        Assert.assertEquals(version + 2, adapter.getPolicyVersion());
+        Thread.sleep(500);
+        Assert.assertTrue(updates.isEmpty());
+
+        otherNode.addPolicy("p", "p", asList("cathy", "data1", "read"));
+        otherNode.removePolicy("p", "p", asList("cathy", "data1", "read"));
+        Assert.assertEquals(version + 4, adapter.getPolicyVersion());
+        Thread.sleep(500);
+        Assert.assertFalse(updates.isEmpty());
+
+        watcher.close();
+        adapter.close();
+        otherNode.close();
+    }
+
+    @Test
+    public void testPgWatcher() throws Exception {
+        JDBCAdapter adapter = new PgAdapterCreator().create(false, "casbin_rule_watched", false);
+        adapter.setChangeTracking(true);
+        adapter.setPolicyExpiry(true);
+        adapter.migrate();
+        JDBCAdapter otherNode = new PgAdapterCreator().create(false, "casbin_rule_watched", false);
+        otherNode.setChangeTracking(true);
+        otherNode.setPolicyExpiry(true);
+
+        List<String> updates = new CopyOnWriteArrayList<>();
+        JDBCWatcher watcher = new JDBCWatcher(adapter, Duration.ofMillis(100));
+        watcher.setUpdateCallback(updates::add);
+
+        // The notifications of the node itself don't trigger the callback, including the ones of the pruning,
+        // which deletes on a connection of its own.
+        adapter.addPolicy("p", "p", asList("cathy", "data1", "read"));
+        adapter.removePolicy("p", "p", asList("cathy", "data1", "read"));
+        adapter.addPolicies("p", "p", asList(asList("erin", "data1", "read")), Duration.ofSeconds(1));
+        Thread.sleep(1500);
+        Assert.assertEquals(1, adapter.pruneExpiredPolicies(100));
+        Thread.sleep(500);
+        Assert.assertTrue(updates.isEmpty());
+
+        otherNode.addPolicy("p", "p", asList("cathy", "data1", "read"));
+        Thread.sleep(500);
+        Assert.assertEquals(asList("casbin_rule_watched"), updates);
+        otherNode.removePolicy("p", "p", asList("cathy", "data1", "read"));
+
+        watcher.close();
+        adapter.close();
+        otherNode.close();
+    }
+
+    @Test
+    public void testTransaction() throws Exception {
+        JDBCAdapter adapter = new MySQLAdapterCreator().create();
+        Enforcer e = new Enforcer("examples/rbac_model.conf", "examples/rbac_policy.csv");
+        adapter.savePolicy(e.getModel());
+
+        adapter.beginTransaction();
+        adapter.addPolicy("p", "p", asList("cathy", "data1", "read"));
+        adapter.removeFilteredPolicy("p", "p", 0, "alice");
+        Assert.assertTrue(adapter.hasPolicy("p", asList("cathy", "data1", "read")));
+        adapter.rollbackTransaction();
+        Assert.assertFalse(adapter.hasPolicy("p", asList("cathy", "data1", "read")));
+        Assert.assertTrue(adapter.hasPolicy("p", asList("alice", "data1", "read")));
+
+        adapter.runInTransaction(() -> {
+            adapter.addPolicy("p", "p", asList("cathy", "data1", "read"));
+            adapter.removeFilteredPolicy("p", "p", 0, "alice");
+        });
+        Assert.assertTrue(adapter.hasPolicy("p", asList("cathy", "data1", "read")));
+        Assert.assertFalse(adapter.hasPolicy("p", asList("alice", "data1", "read")));
+
+        try {
+            adapter.runInTransaction(() -> {
+                adapter.addPolicy("p", "p", asList("dave", "data1", "read"));
+                throw new IllegalStateException("aborted");
+            });
+            fail("Should have thrown IllegalStateException");
+        } catch (IllegalStateException ignored) {
+        }
+        Assert.assertFalse(adapter.hasPolicy("p", asList("dave", "data1", "read")));
+        Assert.assertFalse(adapter.isTransactionOpen());
+
+        adapter.close();
+    }
+
+    @Test
+    public void testExportImportPolicies() throws Exception {
+        JDBCAdapter adapter = new MySQLAdapterCreator().create();
+        Enforcer e = new Enforcer("examples/rbac_model.conf", "examples/rbac_policy.csv");
+        adapter.savePolicy(e.getModel());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Assert.assertEquals(5, adapter.exportPolicies(out));
+
+        adapter.addPolicy("p", "p", asList("cathy", "data1", "read"));
+        Assert.assertEquals(5, adapter.importPolicies(new ByteArrayInputStream(out.toByteArray())));
+        Assert.assertFalse(adapter.hasPolicy("p", asList("cathy", "data1", "read")));
+
+        e.clearPolicy();
+        adapter.loadPolicy(e.getModel());
+        testGetPolicy(e, asList(
+                asList("alice", "data1", "read"),
+                asList("bob", "data2", "write"),
+                asList("data2_admin", "data2", "read"),
+                asList("data2_admin", "data2", "write")));
+
+        byte[] corrupted = out.toByteArray();
+        corrupted[corrupted.length / 2] ^= 1;
+        try {
+            adapter.importPolicies(new ByteArrayInputStream(corrupted));
+            fail("Should have thrown CasbinAdapterException");
+        } catch (CasbinAdapterException ignored) {
+        }
+        Assert.assertEquals(4, adapter.countPolicies("p", 0));
+
+        adapter.close();
+    }
+
+    @Test
+    public void testPolicySnapshotLoader() throws Exception {
+        JDBCAdapter adapter = new MySQLAdapterCreator().create();
+        adapter.savePolicy(new Enforcer("examples/rbac_model.conf", "examples/rbac_policy.csv").getModel());
+
+        PolicySnapshotLoader loader = new PolicySnapshotLoader(adapter);
+        Enforcer e1 = new Enforcer("examples/rbac_model.conf", loader);
+        Enforcer e2 = new Enforcer("examples/rbac_model.conf", loader);
+        Assert.assertTrue(e1.enforce("alice", "data2", "read"));
+        Assert.assertEquals(e1.getPolicy(), e2.getPolicy());
+
+        // A write through the loader drops the snapshot, so the next load sees it.
+        e1.addPolicy("cathy", "data1", "read");
+        e2.loadPolicy();
+        Assert.assertTrue(e2.hasPolicy("cathy", "data1", "read"));
+
+        // A write around the loader is only seen after refresh().
+        adapter.addPolicy("p", "p", asList("erin", "data1", "read"));
+        e2.loadPolicy();
+        Assert.assertFalse(e2.hasPolicy("erin", "data1", "read"));
+
+        PolicySnapshot previous = loader.acquire();
+        loader.refresh();
+        e2.loadPolicy();
+        Assert.assertTrue(e2.hasPolicy("erin", "data1", "read"));
+        Assert.assertEquals(6, previous.size());
+        previous.close();
+        Assert.assertEquals(0, previous.size());
+
+        // Every model gets its own rules, and batch and update changes go through the adapter.
+        e1.updatePolicy(asList("alice", "data1", "read"), asList("alice", "data1", "write"));
+        e1.addPolicies(asList(asList("dave", "data1", "read"), asList("dave", "data2", "read")));
+        Assert.assertTrue(e2.hasPolicy("alice", "data1", "read"));
+        Assert.assertTrue(adapter.hasPolicy("p", asList("alice", "data1", "write")));
+        Assert.assertTrue(adapter.hasPolicy("p", asList("dave", "data2", "read")));
+        e2.loadPolicy();
+        Assert.assertTrue(e2.hasPolicy("alice", "data1", "write"));
+        Assert.assertTrue(e2.hasPolicy("dave", "data2", "read"));
+
+        adapter.close();
+    }
+
+    @Test
+    public void testLoadPolicyIfChanged() throws Exception {
+        JDBCAdapter adapter = new MySQLAdapterCreator().create();
+        adapter.savePolicy(new Enforcer("examples/rbac_model.conf", "examples/rbac_policy.csv").getModel());
+
+        Enforcer e = new Enforcer("examples/rbac_model.conf");
+        Assert.assertTrue(adapter.loadPolicyIfChanged(e.getModel()));
+        Assert.assertFalse(adapter.loadPolicyIfChanged(e.getModel()));
+
+        adapter.addPolicy("p", "p", asList("cathy", "data1", "read"));
+        Assert.assertTrue(adapter.loadPolicyIfChanged(e.getModel()));
+        Assert.assertTrue(e.hasPolicy("cathy", "data1", "read"));
+        Assert.assertEquals(5, e.getPolicy().size());
+        Assert.assertFalse(adapter.loadPolicyIfChanged(e.getModel()));
+
+        // An in-place update that only shifts a field past a NULL keeps the count and the ids but changes the hash.
+        try (Connection connection = adapter.dataSource.getConnection(); Statement stmt = connection.createStatement()) {
+            stmt.executeUpdate("UPDATE casbin_rule SET v2 = NULL, v3 = 'read' WHERE v0 = 'cathy'");
+        }
+        Assert.assertTrue(adapter.loadPolicyIfChanged(e.getModel()));
+
+        adapter.close();
+    }
+
+    @Test
+    public void testShadowSave() throws Exception {
+        JDBCAdapter adapter = new MySQLAdapterCreator().create();
+        adapter.setShadowSave(true);
+        adapter.setShadowSaveParallelism(2);
+
+        Enforcer e = new Enforcer("examples/rbac_model.conf", "examples/rbac_policy.csv");
+        for (int i = 0; i < 2500; i++) {
+            e.addPolicy("user" + i, "data1", "read");
+        }
+        adapter.savePolicy(e.getModel());
+        Assert.assertEquals(2504, adapter.countPolicies("p", 0));
+
+        e.removePolicy("user0", "data1", "read");
+        adapter.savePolicy(e.getModel());
+        Assert.assertEquals(2503, adapter.countPolicies("p", 0));
+        Assert.assertFalse(adapter.hasPolicy("p", asList("user0", "data1", "read")));
+        Assert.assertTrue(adapter.hasPolicy("g", asList("alice", "data2_admin")));
+
+        // Concurrent saves of two nodes don't drop each other's shadow table.
+        JDBCAdapter otherNode = new MySQLAdapterCreator().create(false, "casbin_rule", false);
+        otherNode.setShadowSave(true);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        List<Future<?>> saves = new ArrayList<>();
+        for (JDBCAdapter node : asList(adapter, otherNode)) {
+            saves.add(executor.submit(() -> {
+                for (int i = 0; i < 5; i++) {
+                    node.savePolicy(e.getModel());
+                }
+            }));
+        }
+        for (Future<?> save : saves) {
+            save.get();
+        }
+        executor.shutdown();
+        Assert.assertEquals(2503, adapter.countPolicies("p", 0));
+
+        otherNode.close();
+        adapter.close();
+    }
+
+    @Test
+    public void testStreamPolicies() throws Exception {
+        JDBCAdapter adapter = new MySQLAdapterCreator().create();
+        Enforcer e = new Enforcer("examples/rbac_with_domains_model.conf", "examples/rbac_with_domains_policy.csv");
+        adapter.savePolicy(e.getModel());
+
+        List<List<String>> rules = new ArrayList<>();
+        Assert.assertEquals(6, adapter.streamPolicies(null, 4, (ptype, rule) -> rules.add(rule)));
+        Assert.assertEquals(asList("admin", "domain1", "data1", "read"), rules.get(0));
+
+        JDBCFilter filter = new JDBCFilter();
+        filter.clause("g").in(2, "domain1");
+        rules.clear();
+        Assert.assertEquals(1, adapter.streamPolicies(filter, 4, (ptype, rule) -> rules.add(rule)));
+        Assert.assertEquals(asList(asList("alice", "admin", "domain1")), rules);
+
+        Assert.assertEquals(1, adapter.streamPolicies(null, 4, (ptype, rule) -> false));
+
+        adapter.close();
+    }
+
+    @Test
+    public void testFlightRecorderEvents() throws Exception {
+        // The tests are compiled for Java 8 as well, so jdk.jfr is only used by reflection.
+        Class<?> recordingClass;
+        try {
+            recordingClass = Class.forName("jdk.jfr.Recording");
+        } catch (ClassNotFoundException e) {
+            return;
+        }
+        JDBCAdapter adapter = new MySQLAdapterCreator().create();
+        Path file = Files.createTempFile("jdbc-adapter", ".jfr");
+        Object recording = recordingClass.getConstructor().newInstance();
+        try {
+            recordingClass.getMethod("enable", String.class).invoke(recording, JfrAdapterEvents.OPERATION_EVENT);
+            recordingClass.getMethod("start").invoke(recording);
+            adapter.addPolicies("p", "p", asList(asList("cathy", "data1", "read"), asList("cathy", "data2", "read")));
+            recordingClass.getMethod("stop").invoke(recording);
+            recordingClass.getMethod("dump", Path.class).invoke(recording, file);
+        } finally {
+            recordingClass.getMethod("close").invoke(recording);
+        }
+
+        List<?> events = (List<?>) Class.forName("jdk.jfr.consumer.RecordingFile")
+                .getMethod("readAllEvents", Path.class).invoke(null, file);
+        Class<?> recordedObject = Class.forName("jdk.jfr.consumer.RecordedObject");
+        Method getString = recordedObject.getMethod("getString", String.class);
+        Method getLong = recordedObject.getMethod("getLong", String.class);
+        Assert.assertEquals(1, events.size());
+        Assert.assertEquals("ADD_POLICY", getString.invoke(events.get(0), "operation"));
+        Assert.assertEquals("p", getString.invoke(events.get(0), "ptype"));
+        Assert.assertEquals(2L, getLong.invoke(events.get(0), "rows"));
+        Assert.assertEquals(1L, getLong.invoke(events.get(0), "batches"));
+        Files.delete(file);
+
+        adapter.removeFilteredPolicy("p", "p", 0, "cathy");
+        adapter.close();
+    }
+
+    @Test
+    public void testHighThroughputSchema() throws Exception {
+        JDBCAdapter adapter = new SQLServerAdapterCreator().create();
+        adapter.setHighThroughputSchema(true);
+        adapter.migrate();
+        // Converting an already converted table does nothing.
+        adapter.migrate();
+
+        testAdapter(asList(adapter));
+        adapter.close();
+    }
+
+    @Test
+    public void testAddPoliciesFromStream() throws Exception {
+        JDBCAdapter adapter = new MySQLAdapterCreator().create();
+        adapter.savePolicy(new Enforcer("examples/rbac_model.conf").getModel());
+
+        List<Long> committed = new ArrayList<>();
+        PolicyImportProgress progress = adapter.addPolicies("p", "p",
+                IntStream.range(0, 2500).mapToObj(i -> asList("user" + i, "data1", "read")), 1000,
+                p -> committed.add(p.getRows()));
+
+        Assert.assertEquals(2500, progress.getRows());
+        Assert.assertEquals(3, progress.getChunks());
+        Assert.assertEquals(asList(1000L, 2000L, 2500L), committed);
+        Assert.assertEquals(2500, adapter.countPolicies("p", 1, "data1"));
+
+        adapter.close();
+    }
+
+    @Test
+    public void testPartitionedTable() throws Exception {
+        JDBCAdapter byPtype = new PgAdapterCreator().create(false, "casbin_rule_by_ptype", false);
+        byPtype.setPartitionByPtype("p", "g");
+        byPtype.migrate();
+        testAdapter(asList(byPtype));
+        byPtype.close();
+
+        JDBCAdapter byHash = new PgAdapterCreator().create(false, "casbin_rule_by_hash", false);
+        byHash.setPartitionByHash(0, 4);
+        byHash.migrate();
+        testAdapter(asList(byHash));
+
+        byHash.savePolicy(new Enforcer("examples/rbac_model.conf", "examples/rbac_policy.csv").getModel());
+        byHash.removeFilteredPolicy("p", "p", 0, "alice");
+        Enforcer e = new Enforcer("examples/rbac_model.conf", byHash);
+        Assert.assertFalse(e.enforce("alice", "data1", "read"));
+        Assert.assertTrue(e.enforce("bob", "data2", "write"));
+        byHash.close();
+    }
+
+    @Test
+    public void testSchemaMarker() throws Exception {
+        int[] migrations = new int[1];
+        MysqlDataSource dataSource = new MySQLAdapterCreator().getDataSource();
+        JDBCAdapter adapter = new JDBCAdapter(dataSource, false, "casbin_rule_marker", a -> a.setSchemaMarker(true)) {
+            @Override
+            protected void createSchema() throws SQLException {
+                migrations[0]++;
+                super.createSchema();
+            }
+        };
+        // The schema is already created with the same options, so only the marker is read.
+        int created = migrations[0];
+        adapter.migrate();
+        Assert.assertEquals(created, migrations[0]);
+        testAdapter(asList(adapter));
+        adapter.close();
+
+        // Another adapter with the same options issues no DDL either.
+        JDBCAdapter otherNode = new JDBCAdapter(dataSource, false, "casbin_rule_marker", a -> a.setSchemaMarker(true)) {
+            @Override
+            protected void createSchema() throws SQLException {
+                migrations[0]++;
+                super.createSchema();
+            }
+        };
+        otherNode.close();
+        Assert.assertEquals(created, migrations[0]);
+
+        // The connection is opened on first use.
+        JDBCAdapter unused = new MySQLAdapterCreator().create(false, "casbin_rule_marker", false);
+        Assert.assertNull(unused.conn);
+        unused.close();
+    }
+
+    @Test
+    public void testRemoveFilteredPolicyReturnsEffects() throws Exception {
+        JDBCAdapter adapter = new MySQLAdapterCreator().create();
+        adapter.savePolicy(new Enforcer("examples/rbac_model.conf", "examples/rbac_policy.csv").getModel());
+
+        List<List<String>> removed = adapter.removeFilteredPolicyReturnsEffects("p", "p", 0, "alice");
+        Assert.assertEquals(asList(asList("alice", "data1", "read")), removed);
+        Assert.assertTrue(adapter.removeFilteredPolicyReturnsEffects("p", "p", 0, "alice").isEmpty());
+        Assert.assertEquals(0, adapter.countPolicies("p", 0, "alice"));
+
+        adapter.close();
+    }
+
+    @Test
+    public void testCopyPolicies() throws Exception {
+        JDBCAdapter adapter = new MySQLAdapterCreator().create();
+        adapter.savePolicy(new Enforcer("examples/rbac_with_domains_model.conf", "examples/rbac_with_domains_policy.csv").getModel());
+
+        long policies = adapter.countPolicies("p", 1, "domain1");
+        long roles = adapter.countPolicies("g", 2, "domain1");
+        Assert.assertEquals(policies, adapter.copyPolicies("p", 1, "domain1", "domain3"));
+        Assert.assertEquals(roles, adapter.copyPolicies("g", 2, "domain1", "domain3"));
+        Assert.assertEquals(0, adapter.copyPolicies("p", 1, "unknown", "domain4"));
+
+        Enforcer e = new Enforcer("examples/rbac_with_domains_model.conf", adapter);
+        Assert.assertTrue(e.enforce("alice", "domain3", "data1", "read"));
+        Assert.assertFalse(e.enforce("bob", "domain3", "data2", "read"));
+
+        adapter.close();
+    }
+
+    @Test
+    public void testPolicyExpiry() throws Exception {
+        JDBCAdapter untracked = new MySQLAdapterCreator().create(false, "casbin_rule_expiry", false);
+        try {
+            untracked.pruneExpiredPolicies(100);
+            fail("Should have thrown IllegalStateException");
+        } catch (IllegalStateException ignored) {
+        }
+        untracked.close();
+
+        JDBCAdapter adapter = new MySQLAdapterCreator().create(false, "casbin_rule_expiry", false);
+        adapter.setPolicyExpiry(true);
+        adapter.migrate();
+        adapter.savePolicy(new Enforcer("examples/rbac_model.conf", "examples/rbac_policy.csv").getModel());
+
+        adapter.addPolicies("p", "p", asList(asList("carol", "data1", "read")), Duration.ofSeconds(1));
+        adapter.addPolicies("p", "p", asList(asList("dave", "data1", "read")), Duration.ofHours(1));
+        adapter.addPolicies("g", "g", asList(asList("erin", "data2_admin")), Duration.ofSeconds(1));
+        Enforcer e = new Enforcer("examples/rbac_model.conf", adapter);
+        Assert.assertTrue(e.enforce("carol", "data1", "read"));
+        Assert.assertTrue(e.enforce("erin", "data2", "read"));
+        // Saving the model again keeps the expiry of the stored rules.
+        e.savePolicy();
+        Model model = new Enforcer("examples/rbac_model.conf").getModel();
+        Assert.assertTrue(adapter.loadPolicyIfChanged(model));
+
+        Thread.sleep(2000);
+        // The expired rules change the fingerprint although no row changed.
+        Assert.assertTrue(adapter.loadPolicyIfChanged(model));
+        Assert.assertFalse(model.hasPolicy("p", "p", asList("carol", "data1", "read")));
+        e.loadPolicy();
+        Assert.assertFalse(e.enforce("carol", "data1", "read"));
+        Assert.assertTrue(e.enforce("dave", "data1", "read"));
+
+        // The role reachable only through the expired g rule doesn't bring its p rules.
+        e.clearPolicy();
+        adapter.loadSubjectPolicy(e.getModel(), "erin");
+        testGetPolicy(e, asList());
+        Assert.assertFalse(e.hasGroupingPolicy("erin", "data2_admin"));
+        Assert.assertFalse(adapter.hasPolicy("p", asList("carol", "data1", "read")));
+        Assert.assertEquals(0, adapter.countPolicies("p", 0, "carol"));
+
+        // The expired rule is not copied, and the copy of dave keeps its expiry.
+        Assert.assertEquals(2, adapter.copyPolicies("p", 1, "data1", "data9"));
+        Assert.assertTrue(adapter.hasPolicy("p", asList("dave", "data9", "read")));
+
+        Assert.assertEquals(2, adapter.pruneExpiredPolicies(100));
+        adapter.removeFilteredPolicy("p", "p", 1, "data9");
+        adapter.close();
+    }
+
+    @Test
+    public void testPtypeTables() throws Exception {
+        JDBCAdapter adapter = new MySQLAdapterCreator().create(false, "casbin_rule_split", false);
+        adapter.setPtypeTables("g");
+        adapter.migrate();
+        adapter.savePolicy(new Enforcer("examples/rbac_model.conf", "examples/rbac_policy.csv").getModel());
+
+        adapter.addPolicy("g", "g", asList("bob", "data2_admin"));
+        Assert.assertTrue(adapter.hasPolicy("g", asList("bob", "data2_admin")));
+        Enforcer e = new Enforcer("examples/rbac_model.conf", adapter);
+        Assert.assertTrue(e.enforce("alice", "data2", "read"));
+        Assert.assertTrue(e.enforce("bob", "data2", "read"));
+
+        JDBCFilter filter = new JDBCFilter();
+        filter.clause("g").in(0, "alice");
+        e.loadFilteredPolicy(filter);
+        testGetPolicy(e, asList());
+        Assert.assertTrue(e.hasGroupingPolicy("alice", "data2_admin"));
+        Assert.assertFalse(e.hasGroupingPolicy("bob", "data2_admin"));
+
+        // The role closure is read from the table of g, and the p rules from the table of the adapter.
+        e.clearPolicy();
+        adapter.loadSubjectPolicy(e.getModel(), "alice");
+        testGetPolicy(e, asList(
+                asList("alice", "data1", "read"),
+                asList("data2_admin", "data2", "read"),
+                asList("data2_admin", "data2", "write")));
+        Assert.assertTrue(e.hasGroupingPolicy("alice", "data2_admin"));
+
+        adapter.removeFilteredPolicy("g", "g", 0, "bob");
+        Assert.assertEquals(1, adapter.countPolicies("g", 0));
+        Assert.assertEquals(4, adapter.countPolicies("p", 0));
+
+        adapter.close();
+    }
+
+    @Test
+    public void testReconcile() throws Exception {
+        JDBCAdapter adapter = new MySQLAdapterCreator().create();
+        adapter.savePolicy(new Enforcer("examples/rbac_model.conf", "examples/rbac_policy.csv").getModel());
+        Enforcer e = new Enforcer("examples/rbac_model.conf", adapter);
+        Assert.assertEquals(0, adapter.reconcile(e.getModel()));
+
+        adapter.addPolicy("p", "p", asList("carol", "data3", "read"));
+        adapter.removePolicy("g", "g", asList("alice", "data2_admin"));
+        e.getModel().addPolicy("p", "p", asList("dave", "data1", "read"));
+        Assert.assertEquals(3, adapter.reconcile(e.getModel(), 16));
+        e.buildRoleLinks();
+        testGetPolicy(e, asList(
+                asList("alice", "data1", "read"),
+                asList("bob", "data2", "write"),
+                asList("data2_admin", "data2", "read"),
+                asList("data2_admin", "data2", "write"),
+                asList("carol", "data3", "read")));
+        Assert.assertFalse(e.enforce("alice", "data2", "read"));
+        Assert.assertEquals(0, adapter.reconcile(e.getModel()));
+
+        // A duplicate row is the same rule, it doesn't leave its bucket mismatched.
+        adapter.addPolicy("p", "p", asList("carol", "data3", "read"));
+        Assert.assertEquals(0, adapter.reconcile(e.getModel(), 16));
+
+        adapter.close();
+    }
+
+    @Test
+    public void testRemoveFilteredPolicies() throws Exception {
+        JDBCAdapter adapter = new MySQLAdapterCreator().create();
+        adapter.savePolicy(new Enforcer("examples/rbac_model.conf", "examples/rbac_policy.csv").getModel());
+
+        int[] counts = adapter.removeFilteredPolicies(asList(
+                new PolicyFilter("p", 0, "alice"),
+                new PolicyFilter("g", 0, "alice"),
+                new PolicyFilter("p", 1, "data2", "write"),
+                new PolicyFilter("p", 0, "unknown")));
+        Assert.assertArrayEquals(new int[]{1, 1, 2, 0}, counts);
+
+        Enforcer e = new Enforcer("examples/rbac_model.conf", adapter);
+        testGetPolicy(e, asList(asList("data2_admin", "data2", "read")));
+        Assert.assertFalse(e.hasGroupingPolicy("alice", "data2_admin"));
+
+        adapter.close();
+    }
 }